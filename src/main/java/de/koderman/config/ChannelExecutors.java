@@ -0,0 +1,52 @@
+package de.koderman.config;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executors for the clientInboundChannel and clientOutboundChannel when virtual threads or room
+ * lanes are enabled; otherwise the channels keep Spring's default pools of platform threads.
+ */
+public final class ChannelExecutors {
+    // Virtual threads cost next to nothing while parked, so the cap only guards against runaway load
+    private static final int VIRTUAL_POOL_SIZE = 1024;
+    private static final int KEEP_ALIVE_SECONDS = 60;
+
+    private ChannelExecutors() {
+    }
+
+    /**
+     * Runs each message on its own virtual thread, so a handler waiting on a room or a slow
+     * socket does not hold up messages queued behind it. Spring 6.1 only accepts a
+     * ThreadPoolTaskExecutor for the channels, hence a large pool of virtual threads that time
+     * out when idle rather than a thread-per-task executor. Callers outside the channel
+     * registration have to initialize it themselves.
+     */
+    public static ThreadPoolTaskExecutor virtual(String threadNamePrefix) {
+        return virtual(new ThreadPoolTaskExecutor(), threadNamePrefix);
+    }
+
+    /**
+     * A {@link RoomLaneExecutor} with the given number of lanes. Its lanes and the pool for
+     * messages outside rooms run on virtual threads if virtualThreads is set, otherwise on
+     * platform threads sized like Spring's default pool.
+     */
+    public static RoomLaneExecutor roomLanes(int lanes, boolean virtualThreads, String threadNamePrefix) {
+        RoomLaneExecutor executor = new RoomLaneExecutor(lanes);
+        if (virtualThreads) {
+            return virtual(executor, threadNamePrefix);
+        }
+        executor.setCorePoolSize(Runtime.getRuntime().availableProcessors() * 2);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        return executor;
+    }
+
+    private static <E extends ThreadPoolTaskExecutor> E virtual(E executor, String threadNamePrefix) {
+        executor.setVirtualThreads(true);
+        executor.setCorePoolSize(VIRTUAL_POOL_SIZE);
+        executor.setKeepAliveSeconds(KEEP_ALIVE_SECONDS);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        return executor; // Initialized by Spring, which registers it as the channel's executor bean
+    }
+}
@@ -0,0 +1,334 @@
+package de.koderman.config;
+
+import de.koderman.domain.Room;
+import de.koderman.infrastructure.RoomRouting;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.annotation.support.SimpAnnotationMethodMessageHandler;
+import org.springframework.messaging.simp.broker.OrderedMessageChannelDecorator;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Executor for the clientInboundChannel that runs all messages for one room on one serial
+ * lane. The room code in /app/room/{code}/... picks one of N single-thread lanes by hash, so a
+ * room's messages are handled one at a time in the order they arrived, chair commands and
+ * participant messages alike, and never contend for the room; different rooms spread across
+ * the lanes. Everything else (CONNECT, SUBSCRIBE, heartbeats, ...) runs on the pool as usual.
+ * Only the @MessageMapping handler's task for a message takes a lane; the broker and
+ * user-destination handlers also subscribed to the channel ignore /app messages and run on the
+ * pool, so each message is queued, or dropped, exactly once.
+ * <p>
+ * With priority lanes on, each lane keeps messages from the chair of the room bound to the
+ * session apart from everyone else's and always runs them first, so /next or /poll/end do not
+ * wait behind a flood of votes. Participant messages queue in a bounded low-priority lane;
+ * once it is full further ones are dropped and passed to the {@link DroppedMessageHandler}
+ * rather than failing the send, which would make the client reconnect. A session that becomes
+ * chair may overtake its own earlier messages that are still queued. This only works with
+ * app.room.command-mode=direct, where the lane applies the command itself; in actor mode it
+ * would just queue it on the room's mailbox.
+ * <p>
+ * Rooms sharing a lane also wait for each other, so a handler that blocks holds up its whole
+ * stripe; use at least as many lanes as cores.
+ */
+@Slf4j
+public class RoomLaneExecutor extends ThreadPoolTaskExecutor {
+    private static final String ROOM_DESTINATION_PREFIX = "/app/room/";
+
+    public enum Priority { HIGH, LOW }
+
+    /**
+     * Told about each participant message dropped because its room's low-priority lane was
+     * full, e.g. to let the session know. Runs on the thread that sent the message.
+     */
+    @FunctionalInterface
+    public interface DroppedMessageHandler {
+        void dropped(String roomCode, Message<?> message);
+    }
+
+    private final int laneCount;
+    private boolean priorityLanes;
+    private int lowPriorityCapacity = Integer.MAX_VALUE;
+    private Lane[] lanes = new Lane[0];
+    private final WaitStats highWaits = new WaitStats();
+    private final WaitStats lowWaits = new WaitStats();
+    private final LongAdder lowDropped = new LongAdder();
+    private DroppedMessageHandler droppedMessageHandler = (roomCode, message) -> {};
+
+    public RoomLaneExecutor(int laneCount) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("A room lane executor needs at least one lane, got " + laneCount);
+        }
+        this.laneCount = laneCount;
+    }
+
+    /**
+     * Runs messages from chair sessions ahead of the others and caps how many other messages
+     * each lane queues. Set before the executor is initialized.
+     */
+    public void setPriorityLanes(boolean priorityLanes, int lowPriorityCapacity) {
+        if (lowPriorityCapacity < 1) {
+            throw new IllegalArgumentException("The low-priority lane needs room for at least one message, got " + lowPriorityCapacity);
+        }
+        this.priorityLanes = priorityLanes;
+        this.lowPriorityCapacity = priorityLanes ? lowPriorityCapacity : Integer.MAX_VALUE;
+    }
+
+    public void setDroppedMessageHandler(DroppedMessageHandler droppedMessageHandler) {
+        this.droppedMessageHandler = droppedMessageHandler;
+    }
+
+    @Override
+    @NonNull
+    protected ExecutorService initializeExecutor(@NonNull ThreadFactory threadFactory,
+            @NonNull RejectedExecutionHandler rejectedExecutionHandler) {
+        // Lanes get threads from the same factory, so they are virtual when the pool is
+        Lane[] created = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            created[i] = new Lane(threadFactory);
+        }
+        lanes = created;
+        return super.initializeExecutor(threadFactory, rejectedExecutionHandler);
+    }
+
+    @Override
+    public void execute(@NonNull Runnable task) {
+        Message<?> message = task instanceof MessageHandlingRunnable handling
+                && handling.getMessageHandler() instanceof SimpAnnotationMethodMessageHandler
+                ? handling.getMessage() : null;
+        String roomCode = message != null ? roomCodeOf(message) : null;
+        if (roomCode == null || lanes.length == 0) {
+            super.execute(task);
+            return;
+        }
+        if (!lanes[Math.floorMod(RoomRouting.keyOf(roomCode), lanes.length)].offer(task, classify(message.getHeaders()))) {
+            drop(roomCode, message);
+        }
+    }
+
+    private void drop(String roomCode, Message<?> message) {
+        lowDropped.increment();
+        // With the session's receive order preserved, its next message waits for this one to finish
+        Runnable releaseNext = OrderedMessageChannelDecorator.getNextMessageTask(message);
+        if (releaseNext != null) {
+            releaseNext.run();
+        }
+        try {
+            droppedMessageHandler.dropped(roomCode, message);
+        } catch (RuntimeException ex) {
+            log.warn("Handling a dropped message for room {} failed", roomCode, ex);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (Lane lane : lanes) {
+            lane.stop();
+        }
+        super.shutdown();
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    // Chair messages are high priority; the room bound at join tells without a repository lookup
+    private Priority classify(MessageHeaders headers) {
+        if (!priorityLanes) {
+            return Priority.LOW; // One FIFO, unbounded
+        }
+        Room room = RoomRouting.boundRoom(SimpMessageHeaderAccessor.getSessionAttributes(headers));
+        return room != null && room.isChairSession(SimpMessageHeaderAccessor.getSessionId(headers))
+                ? Priority.HIGH : Priority.LOW;
+    }
+
+    // "/app/room/ABCD/join" -> "ABCD"
+    private static String roomCodeOf(Message<?> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null || !destination.startsWith(ROOM_DESTINATION_PREFIX)) {
+            return null;
+        }
+        int end = destination.indexOf('/', ROOM_DESTINATION_PREFIX.length());
+        return end < 0 ? null : destination.substring(ROOM_DESTINATION_PREFIX.length(), end);
+    }
+
+    /**
+     * Per priority: messages handled, dropped, still queued, and how long they waited in their
+     * lane before running, for /healthz/inbound.
+     */
+    public Map<String, Long> metrics() {
+        int highQueued = 0;
+        int lowQueued = 0;
+        for (Lane lane : lanes) {
+            highQueued += lane.size(Priority.HIGH);
+            lowQueued += lane.size(Priority.LOW);
+        }
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("lanes", (long) laneCount);
+        metrics.put("priorityLanes", priorityLanes ? 1L : 0L);
+        highWaits.addTo(metrics, "high");
+        metrics.put("highQueued", (long) highQueued);
+        lowWaits.addTo(metrics, "low");
+        metrics.put("lowQueued", (long) lowQueued);
+        metrics.put("lowDropped", lowDropped.sum());
+        return metrics;
+    }
+
+    /**
+     * One worker thread with a high- and a low-priority queue; it takes from the high one
+     * whenever that is not empty.
+     */
+    private final class Lane {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition ready = lock.newCondition();
+        private final ArrayDeque<Queued> high = new ArrayDeque<>();
+        private final ArrayDeque<Queued> low = new ArrayDeque<>();
+        private boolean stopped; // Guarded by lock
+
+        private Lane(ThreadFactory threadFactory) {
+            threadFactory.newThread(this::work).start();
+        }
+
+        // Returns false if the low-priority queue is full
+        boolean offer(Runnable task, Priority priority) {
+            lock.lock();
+            try {
+                if (stopped) {
+                    throw new TaskRejectedException("Room lanes have been shut down");
+                }
+                if (priority == Priority.HIGH) {
+                    high.add(new Queued(task, priority, System.nanoTime()));
+                } else if (low.size() < lowPriorityCapacity) {
+                    low.add(new Queued(task, priority, System.nanoTime()));
+                } else {
+                    return false;
+                }
+                ready.signal();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size(Priority priority) {
+            lock.lock();
+            try {
+                return priority == Priority.HIGH ? high.size() : low.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void stop() {
+            lock.lock();
+            try {
+                stopped = true;
+                high.clear();
+                low.clear();
+                ready.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void work() {
+            Queued next;
+            while ((next = take()) != null) {
+                (next.priority() == Priority.HIGH ? highWaits : lowWaits).record(System.nanoTime() - next.queuedNanos());
+                try {
+                    next.task().run();
+                } catch (Throwable ex) {
+                    // The channel has already passed it to its interceptors; keep the lane, and
+                    // every room on it, alive whatever the handler threw
+                    log.error("Room lane task failed", ex);
+                }
+            }
+        }
+
+        // Returns null once stopped
+        private Queued take() {
+            lock.lock();
+            try {
+                while (!stopped) {
+                    Queued next = high.isEmpty() ? low.poll() : high.poll();
+                    if (next != null) {
+                        return next;
+                    }
+                    ready.await();
+                }
+                return null;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private record Queued(Runnable task, Priority priority, long queuedNanos) {}
+
+    /**
+     * Queue wait times in buckets of powers of two microseconds, so percentiles come out
+     * rounded up to the next power of two.
+     */
+    private static final class WaitStats {
+        private static final int BUCKETS = 40;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+        private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+        private WaitStats() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros))].increment();
+            count.increment();
+            totalMicros.add(micros);
+            maxMicros.accumulate(micros);
+        }
+
+        void addTo(Map<String, Long> metrics, String prefix) {
+            long handled = count.sum();
+            metrics.put(prefix + "Handled", handled);
+            metrics.put(prefix + "WaitMeanMicros", handled > 0 ? totalMicros.sum() / handled : 0);
+            metrics.put(prefix + "WaitP50Micros", percentile(handled, 50));
+            metrics.put(prefix + "WaitP99Micros", percentile(handled, 99));
+            metrics.put(prefix + "WaitMaxMicros", maxMicros.get());
+        }
+
+        // Upper bound of the bucket holding the given percentile
+        private long percentile(long handled, int percent) {
+            long rank = (handled * percent + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i].sum();
+                if (seen >= rank && seen > 0) {
+                    return i == 0 ? 0 : (1L << i) - 1;
+                }
+            }
+            return 0;
+        }
+    }
+}
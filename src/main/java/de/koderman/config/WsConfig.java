@@ -1,30 +1,185 @@
 package de.koderman.config;
 
+import de.koderman.domain.RoomError;
+import de.koderman.infrastructure.ConflatingWebSocketSession;
+import de.koderman.infrastructure.RoomTopicBroker;
+import de.koderman.infrastructure.StompFrameFanout;
+import de.koderman.infrastructure.WebSocketSessionRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
 
 @Configuration
 @EnableWebSocketMessageBroker
 class WsConfig implements WebSocketMessageBrokerConfigurer {
+    // Same as Spring's defaults for the session decorator it puts around every WebSocket session
+    private static final int SEND_TIME_LIMIT_MS = 10 * 1000;
+    private static final int SEND_BUFFER_SIZE_LIMIT = 512 * 1024;
+
+    @Value("${app.broadcast.mode:full}")
+    private String broadcastMode;
+
+    @Value("${app.broadcast.broker:simple}")
+    private String broker;
+
+    @Value("${app.websocket.conflate:false}")
+    private boolean conflate;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${app.room.command-mode:direct}")
+    private String commandMode;
+
+    @Value("${app.room.inbound-lanes:0}")
+    private int inboundLanes;
+
+    @Value("${app.room.inbound-priority:false}")
+    private boolean inboundPriority;
+
+    @Value("${app.room.inbound-low-priority-capacity:10000}")
+    private int lowPriorityCapacity;
+
+    private final StompFrameFanout frameFanout;
+    private final WebSocketSessionRegistry sessions;
+    // Built by the broker configuration this class configures, so only looked up when needed
+    private final ObjectProvider<SimpMessagingTemplate> messagingTemplate;
+
+    WsConfig(StompFrameFanout frameFanout, WebSocketSessionRegistry sessions,
+            ObjectProvider<SimpMessagingTemplate> messagingTemplate) {
+        this.frameFanout = frameFanout;
+        this.sessions = sessions;
+        this.messagingTemplate = messagingTemplate;
+    }
+
     @Override
     public void registerStompEndpoints(@NonNull StompEndpointRegistry registry) {
         // only pure WebSocket endpoint (no SockJS)
         registry.addEndpoint("/ws").setAllowedOriginPatterns("*");
+        // Virtual threads run a session's messages concurrently, so keep them in the order received
+        registry.setPreserveReceiveOrder(virtualThreads);
     }
     @Override
     public void configureMessageBroker(@NonNull MessageBrokerRegistry registry) {
         // Enable simple broker with 5-second heartbeat: [server -> client ms, client -> server ms]
-        registry.enableSimpleBroker("/topic")
+        // "/queue" carries the per-session /user/queue/* replies; "/topic" stays here unless the room broker serves it
+        String[] simpleBrokerPrefixes = isRoomBroker() ? new String[] {"/queue"} : new String[] {"/topic", "/queue"};
+        registry.enableSimpleBroker(simpleBrokerPrefixes)
                 .setHeartbeatValue(new long[] {5000L, 5000L}) // 5s keepalive
                 .setTaskScheduler(heartbeatTaskScheduler()); // Required for heartbeats
         registry.setApplicationDestinationPrefixes("/app");
+        // Deltas only apply on top of their base version, and virtual threads would reorder the
+        // rest, so keep per-session delivery order
+        registry.setPreservePublishOrder(virtualThreads || "delta".equalsIgnoreCase(broadcastMode));
+    }
+
+    @Override
+    public void configureWebSocketTransport(@NonNull WebSocketTransportRegistration registration) {
+        if (!conflate && !frameFanout.isEnabled() && !isRoomBroker()) {
+            return;
+        }
+        // Register every session for direct writes, which go through its outbox, already
+        // serializing its sends so those and Spring's own outbound messages never write to the
+        // socket at the same time. Conflating sessions also keep only the latest state per
+        // subscription while a write is in progress.
+        registration.addDecoratorFactory(handler -> new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(@NonNull WebSocketSession session) throws Exception {
+                WebSocketSession serialized = conflate
+                        ? new ConflatingWebSocketSession(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_SIZE_LIMIT, sessions.outboundStats())
+                        : new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_SIZE_LIMIT);
+                sessions.register(serialized);
+                super.afterConnectionEstablished(serialized);
+            }
+
+            @Override
+            public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull CloseStatus closeStatus) throws Exception {
+                sessions.unregister(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        });
+    }
+
+    @Override
+    public void configureClientInboundChannel(@NonNull ChannelRegistration registration) {
+        if (inboundLanes > 0) {
+            // In actor mode a lane only hands the command to the room's mailbox, which runs
+            // everything in arrival order, so the chair would not get ahead after all
+            if (inboundPriority && !"direct".equalsIgnoreCase(commandMode)) {
+                throw new IllegalStateException("app.room.inbound-priority needs app.room.command-mode=direct, got " + commandMode);
+            }
+            RoomLaneExecutor lanes = ChannelExecutors.roomLanes(inboundLanes, virtualThreads, "ws-inbound-");
+            lanes.setPriorityLanes(inboundPriority, lowPriorityCapacity);
+            lanes.setDroppedMessageHandler(this::reportDropped);
+            registration.taskExecutor(lanes);
+        } else if (virtualThreads) {
+            registration.taskExecutor(ChannelExecutors.virtual("ws-inbound-"));
+        }
+        if (frameFanout.isEnabled()) {
+            registration.interceptors(frameFanout); // Follows room topic subscriptions
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(@NonNull ChannelRegistration registration) {
+        if (virtualThreads) {
+            registration.taskExecutor(ChannelExecutors.virtual("ws-outbound-"));
+        }
+    }
+
+    /**
+     * Takes over /topic from the simple broker when app.broadcast.broker=room.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.broadcast.broker", havingValue = "room")
+    public RoomTopicBroker roomTopicBroker(@Qualifier("clientInboundChannel") SubscribableChannel clientInboundChannel,
+            @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+            @Qualifier("brokerChannel") SubscribableChannel brokerChannel) {
+        return new RoomTopicBroker(clientInboundChannel, clientOutboundChannel, brokerChannel, sessions);
+    }
+
+    // Tells the session its message was not applied, without the ERROR frame that would close it
+    private void reportDropped(String roomCode, Message<?> message) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null) {
+            return;
+        }
+        RoomError error = new RoomError(
+            "The room is busy and could not take your last action, please try again",
+            roomCode,
+            "room_busy",
+            null
+        );
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId); // Lets /user/{sessionId} resolve to a session without a user
+        headers.setLeaveMutable(true);
+        messagingTemplate.getObject().convertAndSendToUser(sessionId, "/queue/error", error, headers.getMessageHeaders());
+    }
+
+    private boolean isRoomBroker() {
+        return "room".equalsIgnoreCase(broker);
     }
 
     @Bean
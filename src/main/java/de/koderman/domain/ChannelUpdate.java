@@ -0,0 +1,28 @@
+package de.koderman.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * New contents of one {@link StateChannel}. The client replaces the named State fields with
+ * these values; version is the room version they were taken at, so a client drops updates
+ * older than what it already holds for that channel.
+ */
+public record ChannelUpdate(String roomCode, String channel, long version, Map<String, Object> fields) {
+
+    /**
+     * Updates for every channel whose fields differ between base and next, or for all
+     * channels when there is no base.
+     */
+    public static List<ChannelUpdate> between(State base, State next) {
+        List<ChannelUpdate> updates = new ArrayList<>();
+        for (StateChannel channel : StateChannel.values()) {
+            Map<String, Object> fields = channel.fieldsOf(next);
+            if (base == null || !fields.equals(channel.fieldsOf(base))) {
+                updates.add(new ChannelUpdate(next.roomCode(), channel.topic(), next.version(), fields));
+            }
+        }
+        return updates;
+    }
+}
@@ -0,0 +1,49 @@
+package de.koderman.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single positional edit on an ordered list, applied in sequence by the client.
+ * "remove" drops the element at index, "insert" places value at index.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ListOp<T>(String op, int index, T value) {
+
+    public static <T> ListOp<T> insert(int index, T value) {
+        return new ListOp<>("insert", index, value);
+    }
+
+    public static <T> ListOp<T> remove(int index) {
+        return new ListOp<>("remove", index, null);
+    }
+
+    /**
+     * Edits turning before into after. Only the window between the common prefix and
+     * suffix is rewritten, which is minimal for the append/remove-one/replace-one
+     * changes rooms actually make.
+     */
+    public static <T> List<ListOp<T>> diff(List<T> before, List<T> after) {
+        int max = Math.min(before.size(), after.size());
+        int prefix = 0;
+        while (prefix < max && before.get(prefix).equals(after.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && before.get(before.size() - 1 - suffix).equals(after.get(after.size() - 1 - suffix))) {
+            suffix++;
+        }
+
+        List<ListOp<T>> ops = new ArrayList<>();
+        for (int i = prefix; i < before.size() - suffix; i++) {
+            ops.add(remove(prefix));
+        }
+        for (int i = prefix; i < after.size() - suffix; i++) {
+            ops.add(insert(i, after.get(i)));
+        }
+        return ops;
+    }
+}
@@ -0,0 +1,85 @@
+package de.koderman.domain;
+
+import java.util.*;
+
+/**
+ * Members of a Room in join order, owned by the room's writer. Indexed by session id and by
+ * case-folded name, so lookups and duplicate-name checks never scan the roster. Proxy members
+ * added by the chair share the chair's session id, hence both indexes map to lists.
+ * Joins are O(1) including publication, see {@link SnapshotList}; renames and leaves copy the
+ * roster once, since published snapshots share its array.
+ */
+final class MemberRoster {
+    private final SnapshotList<RoomMember> members = new SnapshotList<>();
+    private final Map<String, List<RoomMember>> bySession = new HashMap<>(); // in join order
+    private final Map<String, List<RoomMember>> byName = new HashMap<>(); // folded name -> members
+
+    /**
+     * Returns the earliest member joined with this session id, or null.
+     */
+    RoomMember firstBySession(String sessionId) {
+        List<RoomMember> entries = bySession.get(sessionId);
+        return entries != null ? entries.get(0) : null;
+    }
+
+    boolean containsName(String name) {
+        return byName.containsKey(Names.fold(name));
+    }
+
+    void add(RoomMember member) {
+        members.add(member);
+        bySession.computeIfAbsent(member.sessionId(), k -> new ArrayList<>(1)).add(member);
+        byName.computeIfAbsent(Names.fold(member.name()), k -> new ArrayList<>(1)).add(member);
+    }
+
+    /**
+     * Puts the renamed member in the place of the existing one, in a single pass over the roster.
+     */
+    void replace(RoomMember existing, RoomMember renamed) {
+        members.replace(existing, renamed);
+        List<RoomMember> sessionEntries = bySession.get(existing.sessionId());
+        sessionEntries.set(sessionEntries.indexOf(existing), renamed); // One member, or the chair and its few proxies
+        removeFrom(byName, Names.fold(existing.name()), existing);
+        byName.computeIfAbsent(Names.fold(renamed.name()), k -> new ArrayList<>(1)).add(renamed);
+    }
+
+    /**
+     * Removes every member with this session id and returns how many there were.
+     */
+    int removeBySession(String sessionId) {
+        List<RoomMember> removed = bySession.remove(sessionId);
+        if (removed == null) {
+            return 0;
+        }
+        members.removeIf(member -> sessionId.equals(member.sessionId()));
+        removed.forEach(member -> removeFrom(byName, Names.fold(member.name()), member));
+        return removed.size();
+    }
+
+    /**
+     * Removes every member whose name equals the given one ignoring case and returns how many there were.
+     */
+    int removeByName(String name) {
+        List<RoomMember> removed = byName.remove(Names.fold(name));
+        if (removed == null) {
+            return 0;
+        }
+        Set<RoomMember> doomed = Collections.newSetFromMap(new IdentityHashMap<>());
+        doomed.addAll(removed);
+        members.removeIf(doomed::contains);
+        removed.forEach(member -> removeFrom(bySession, member.sessionId(), member));
+        return removed.size();
+    }
+
+    List<RoomMember> view() {
+        return members.view();
+    }
+
+    private static void removeFrom(Map<String, List<RoomMember>> index, String key, RoomMember member) {
+        List<RoomMember> entries = index.get(key);
+        entries.remove(member);
+        if (entries.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
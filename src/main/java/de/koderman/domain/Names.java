@@ -0,0 +1,23 @@
+package de.koderman.domain;
+
+/**
+ * Case-folding for participant names, used as hash keys wherever names are compared
+ * with {@link String#equalsIgnoreCase}.
+ */
+final class Names {
+    private Names() {}
+
+    /**
+     * Returns a key that is equal for two names exactly when the names are equal ignoring case.
+     */
+    static String fold(String name) {
+        if (name == null) {
+            return null;
+        }
+        StringBuilder folded = new StringBuilder(name.length());
+        name.codePoints()
+                .map(cp -> Character.toLowerCase(Character.toUpperCase(cp)))
+                .forEach(folded::appendCodePoint);
+        return folded.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package de.koderman.domain;
+
+import java.util.*;
+
+/**
+ * Vote counts of a poll, indexed by option ordinal. Immutable: a vote yields a new tally that
+ * copies the small count array and carries the total along, so voting never boxes, hashes
+ * or re-sums. The keys clients see ("YES", "NO", "OPT_n") are only built for snapshots.
+ */
+final class PollTally {
+    private static final List<String> YES_NO_KEYS = List.of("YES", "NO");
+    private static final PollTally EMPTY = new PollTally(List.of(), 0, new int[0], 0);
+
+    private final List<String> keys;
+    private final int firstOptionNumber; // GRADIENTS count OPT_1..OPT_8, the other option polls start at OPT_0
+    private final int[] counts;
+    private final int total;
+
+    private PollTally(List<String> keys, int firstOptionNumber, int[] counts, int total) {
+        this.keys = keys;
+        this.firstOptionNumber = firstOptionNumber;
+        this.counts = counts;
+        this.total = total;
+    }
+
+    /**
+     * Returns an empty tally with the options clients can vote for in this kind of poll.
+     */
+    static PollTally forPoll(String pollType, List<String> options) {
+        if ("YES_NO".equals(pollType)) {
+            return new PollTally(YES_NO_KEYS, -1, new int[2], 0);
+        }
+        if ("GRADIENTS".equals(pollType)) {
+            return ofOptions(8, 1);
+        }
+        if (("MULTISELECT".equals(pollType) || "MULTISELECT_MULTIPLE".equals(pollType) || "DOT_VOTING".equals(pollType))
+                && options != null && !options.isEmpty()) {
+            return ofOptions(options.size(), 0);
+        }
+        return EMPTY;
+    }
+
+    private static PollTally ofOptions(int size, int firstOptionNumber) {
+        String[] keys = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "OPT_" + (firstOptionNumber + i);
+        }
+        return new PollTally(List.of(keys), firstOptionNumber, new int[size], 0);
+    }
+
+    /**
+     * Parses a vote key to its option ordinal without allocating, or returns -1 if the key is
+     * not an option of this poll.
+     */
+    int ordinalOf(String key) {
+        if (key == null) {
+            return -1;
+        }
+        if (firstOptionNumber < 0) {
+            return "YES".equals(key) ? 0 : "NO".equals(key) ? 1 : -1;
+        }
+        if (!key.startsWith("OPT_") || key.length() == 4 || key.length() > 8) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = 4; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9' || (c == '0' && i == 4 && key.length() > 5)) {
+                return -1; // Not a digit, or a leading zero the option key never has
+            }
+            number = number * 10 + (c - '0');
+        }
+        int ordinal = number - firstOptionNumber;
+        return ordinal >= 0 && ordinal < counts.length ? ordinal : -1;
+    }
+
+    int size() {
+        return counts.length;
+    }
+
+    int count(int ordinal) {
+        return counts[ordinal];
+    }
+
+    int total() {
+        return total;
+    }
+
+    /**
+     * Returns a tally with the count of one option changed by delta.
+     */
+    PollTally adjusted(int ordinal, int delta) {
+        int[] next = counts.clone();
+        next[ordinal] += delta;
+        return new PollTally(keys, firstOptionNumber, next, total + delta);
+    }
+
+    /**
+     * Returns a tally with the same options and the given counts.
+     */
+    PollTally withCounts(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return new PollTally(keys, firstOptionNumber, counts, total);
+    }
+
+    /**
+     * Returns the counts keyed the way clients address options.
+     */
+    Map<String, Integer> toMap() {
+        Map<String, Integer> results = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            results.put(keys.get(i), counts[i]);
+        }
+        return Collections.unmodifiableMap(results);
+    }
+}
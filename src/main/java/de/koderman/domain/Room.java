@@ -4,47 +4,40 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
-
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A meeting room. All changes run one at a time on the room's {@link RoomMailbox} and are
+ * published as a new immutable {@link RoomState} through a volatile field; reads take that
+ * reference directly, so snapshots and chair checks never wait behind a burst of votes.
+ * Single-choice votes skip the mailbox altogether and count into the poll's
+ * {@link SingleChoiceVotes}; they only bump the version.
+ * <p>
+ * Commands return whether they changed the state, so callers can skip broadcasting the ones
+ * that turned out to be no-ops (a duplicate request, the chair assuming the chair, ...).
+ */
 @Slf4j
 public class Room {
     private final String roomCode;
-    private final List<Participant> queue = new ArrayList<>();
-    private final List<RoomMember> members = new ArrayList<>();
-    private Current current = null;
+    private final int codeIndex; // Number of the code in the code space, or -1
     private final long meetingStartSec = Instant.now().getEpochSecond();
-    private int defaultLimitSec = 180; // per-speaker
-    private final ReentrantLock lock = new ReentrantLock();
-    private String chairSessionId = null; // Track chair WebSocket session
-
-    // Room configuration fields
-    private String topic = null;
-    private MeetingGoal meetingGoal = null;
-    private ParticipationFormat participationFormat = null;
-    private DecisionRule decisionRule = null;
-    private Deliverable deliverable = null;
-    private List<String> agenda = null;
-    private int currentAgendaIndex = 0;
-
-    // Polling state
-    private String pollQuestion = null;
-    private String pollType = null;
-    private String pollStatus = null; // "ACTIVE", "ENDED", "CLOSED", null
-    private final Map<String, Integer> pollResults = new HashMap<>();
-    private final Map<String, String> sessionVotes = new HashMap<>(); // Track each session's vote (allows vote changes)
-                                                                      // - for single selection
-    private final Map<String, Set<String>> sessionMultiVotes = new HashMap<>(); // Track each session's votes (allows
-                                                                                // vote changes) - for multiple
-                                                                                // selection
-    private final Map<String, Map<String, Integer>> sessionDotVotes = new HashMap<>(); // Track per-session dot counts
-                                                                                       // per option for DOT_VOTING
-    private PollResults lastPollResults = null;
-    private List<String> pollOptions = null; // For MULTISELECT polls - list of option labels
-    private Integer votesPerParticipant = 1; // For MULTISELECT_MULTIPLE polls - number of votes each participant can
-                                             // cast
+    private final RoomMailbox mailbox; // Runs all writers one at a time
+    private volatile RoomState state = RoomState.INITIAL;
+    private final AtomicLong version = new AtomicLong(); // Bumped after every change, including live votes
+    private volatile long lastActivityNanos = System.nanoTime(); // System.nanoTime() of the last change
+    private volatile boolean removed; // Destroyed or evicted from the repository
+    private long publishes; // Number of publish() calls, only touched on the mailbox
+    private final SpeakerQueue queue = new SpeakerQueue(); // Published through state.queue()
+    private final MemberRoster members = new MemberRoster(); // Published through state.members()
+
+    // Per-session vote bookkeeping, only touched by commands on the mailbox and never read by snapshots
+    private final SessionBallots ballots = new SessionBallots(); // Each session's votes per option (allows vote
+                                                                 // changes) - for multiple selection and DOT_VOTING
 
     public Room(String roomCode) {
         this.roomCode = roomCode;
+        this.codeIndex = RoomCodes.indexOf(roomCode);
+        this.mailbox = new RoomMailbox(roomCode);
     }
 
     public String getRoomCode() {
@@ -55,42 +48,93 @@ public class Room {
         return meetingStartSec;
     }
 
+    /**
+     * Returns whether a code as clients send it, in any case and with "0" for "O", names this
+     * room. Codes in the code space are compared by number without creating strings.
+     */
+    public boolean isAddressedBy(String clientCode) {
+        int index = RoomCodes.parse(clientCode);
+        return index >= 0 ? index == codeIndex : roomCode.equals(RoomCodes.normalize(clientCode));
+    }
+
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    void markRemoved() {
+        removed = true;
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Returns the System.nanoTime() of the room's last change, for ranking rooms by activity.
+     */
+    public long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    /**
+     * Queues a command on the room's mailbox and returns immediately. The command runs after
+     * everything queued before it and may call the room's methods without waiting.
+     */
+    public void execute(Runnable command) {
+        mailbox.execute(command);
+    }
+
+    // Runs a command on the mailbox and returns whether it published a new state
+    private boolean changes(Runnable command) {
+        return mailbox.call(() -> {
+            long before = publishes;
+            command.run();
+            return publishes != before;
+        });
+    }
+
+    // Must be called on the mailbox; the version bump lets clients order broadcasts
+    private void publish(RoomState next) {
+        publishes++;
+        state = next;
+        version.incrementAndGet();
+        lastActivityNanos = System.nanoTime();
+    }
+
     public State snapshot() {
-        lock.lock();
-        try {
-            PollState pollState = null;
-            if (pollQuestion != null && ("ACTIVE".equals(pollStatus) || "ENDED".equals(pollStatus))) {
-                // Poll is active or ended (showing results in overlay)
-                int totalVotes = pollResults.values().stream().mapToInt(Integer::intValue).sum();
-                pollState = new PollState(
-                        pollQuestion,
-                        pollType,
-                        pollStatus,
-                        new HashMap<>(pollResults),
-                        totalVotes,
-                        lastPollResults,
-                        pollOptions != null ? List.copyOf(pollOptions) : null,
-                        votesPerParticipant);
-            } else if ("CLOSED".equals(pollStatus) && lastPollResults != null) {
-                // Poll is closed, show only last results
-                pollState = new PollState(null, null, "CLOSED", Map.of(), 0, lastPollResults, null, null);
-            } else if (lastPollResults != null) {
-                // No active poll, but we have last results
-                pollState = new PollState(null, null, null, Map.of(), 0, lastPollResults, null, null);
-            }
-
-            RoomConfig roomConfig = new RoomConfig(topic, meetingGoal, participationFormat, decisionRule, deliverable, agenda != null ? List.copyOf(agenda) : null);
-
-            return new State(List.copyOf(queue), current, meetingStartSec, defaultLimitSec, roomCode,
-                    chairSessionId != null, pollState, roomConfig, List.copyOf(members), currentAgendaIndex);
-        } finally {
-            lock.unlock();
+        // Version first: the state read after it is at least that new, so a cached snapshot
+        // can only ever be older than its version claims, never newer
+        long v = version.get();
+        RoomState s = state;
+        RoomState.Poll poll = s.poll();
+        PollState pollState = null;
+        if (poll != null && poll.question() != null
+                && ("ACTIVE".equals(s.pollStatus()) || "ENDED".equals(s.pollStatus()))) {
+            // Poll is active or ended (showing results in overlay)
+            PollTally tally = poll.currentTally();
+            pollState = new PollState(
+                    poll.question(),
+                    poll.type(),
+                    s.pollStatus(),
+                    tally.toMap(),
+                    tally.total(),
+                    s.lastPollResults(),
+                    poll.options(),
+                    poll.votesPerParticipant());
+        } else if ("CLOSED".equals(s.pollStatus()) && s.lastPollResults() != null) {
+            // Poll is closed, show only last results
+            pollState = new PollState(null, null, "CLOSED", Map.of(), 0, s.lastPollResults(), null, null);
+        } else if (s.lastPollResults() != null) {
+            // No active poll, but we have last results
+            pollState = new PollState(null, null, null, Map.of(), 0, s.lastPollResults(), null, null);
         }
+
+        return new State(s.queue(), s.current(), meetingStartSec, s.defaultLimitSec(), roomCode,
+                s.chairSessionId() != null, pollState, s.config(), s.members(), s.currentAgendaIndex(), v);
     }
 
-    public void upsertMember(String sessionId, String name) {
-        lock.lock();
-        try {
+    public boolean upsertMember(String sessionId, String name) {
+        return changes(() -> {
             if (sessionId == null || name == null) {
                 return;
             }
@@ -105,26 +149,24 @@ public class Room {
                 return;
             }
 
-            int existingIndex = findIndexBySessionIdUnsafe(sessionId);
-            if (existingIndex < 0) {
+            RoomMember existing = members.firstBySession(sessionId);
+            if (existing == null) {
                 members.add(new RoomMember(sessionId, trimmedName, Instant.now().getEpochSecond()));
+                publish(state.withMembers(members.view()));
                 log.info("Room[{}] upsertMember: Added member {} for session {}", roomCode, trimmedName, sessionId);
                 return;
             }
 
-            RoomMember existing = members.get(existingIndex);
             if (!existing.name().equals(trimmedName)) {
-                members.set(existingIndex, new RoomMember(sessionId, trimmedName, existing.joinedAtSec()));
+                members.replace(existing, new RoomMember(sessionId, trimmedName, existing.joinedAtSec()));
+                publish(state.withMembers(members.view()));
                 log.info("Room[{}] upsertMember: Replaced member name for session {} from {} to {}", roomCode, sessionId, existing.name(), trimmedName);
             }
-        } finally {
-            lock.unlock();
-        }
+        });
     }
 
-    public void addProxyMember(String sessionId, String name) {
-        lock.lock();
-        try {
+    public boolean addProxyMember(String sessionId, String name) {
+        return changes(() -> {
             if (sessionId == null || name == null) {
                 return;
             }
@@ -134,47 +176,33 @@ public class Room {
                 return;
             }
 
-            boolean alreadyPresent = members.stream()
-                    .anyMatch(m -> m.name().equalsIgnoreCase(trimmedName));
-            if (alreadyPresent) {
+            if (members.containsName(trimmedName)) {
                 log.debug("Room[{}] addProxyMember: Member {} already in circle, skipping add", roomCode, trimmedName);
                 return;
             }
 
             members.add(new RoomMember(sessionId, trimmedName, Instant.now().getEpochSecond()));
+            publish(state.withMembers(members.view()));
             log.info("Room[{}] addProxyMember: Added proxy member {} for session {}", roomCode, trimmedName, sessionId);
-        } finally {
-            lock.unlock();
-        }
+        });
     }
 
-    public void removeMember(String sessionId) {
-        lock.lock();
-        try {
+    public boolean removeMember(String sessionId) {
+        return changes(() -> {
             if (sessionId == null) {
                 return;
             }
 
-            int removedCount = 0;
-            for (Iterator<RoomMember> iterator = members.iterator(); iterator.hasNext(); ) {
-                RoomMember member = iterator.next();
-                if (sessionId.equals(member.sessionId())) {
-                    iterator.remove();
-                    removedCount++;
-                }
-            }
-
+            int removedCount = members.removeBySession(sessionId);
             if (removedCount > 0) {
+                publish(state.withMembers(members.view()));
                 log.info("Room[{}] removeMember: Removed {} member(s) for session {}", roomCode, removedCount, sessionId);
             }
-        } finally {
-            lock.unlock();
-        }
+        });
     }
 
-    public void removeMemberByName(String name) {
-        lock.lock();
-        try {
+    public boolean removeMemberByName(String name) {
+        return changes(() -> {
             if (name == null) {
                 return;
             }
@@ -184,63 +212,37 @@ public class Room {
                 return;
             }
 
-            int removedCount = 0;
-            for (Iterator<RoomMember> iterator = members.iterator(); iterator.hasNext(); ) {
-                RoomMember member = iterator.next();
-                if (member.name().equalsIgnoreCase(trimmedName)) {
-                    iterator.remove();
-                    removedCount++;
-                }
-            }
-
+            int removedCount = members.removeByName(trimmedName);
             if (removedCount > 0) {
+                publish(state.withMembers(members.view()));
                 log.info("Room[{}] removeMemberByName: Removed {} member(s) named {}", roomCode, removedCount, trimmedName);
             }
-        } finally {
-            lock.unlock();
-        }
-    }
-
-    private int findIndexBySessionIdUnsafe(String sessionId) {
-        for (int i = 0; i < members.size(); i++) {
-            if (members.get(i).sessionId().equals(sessionId)) {
-                return i;
-            }
-        }
-        return -1;
+        });
     }
 
     public boolean isChairSession(String sessionId) {
-        lock.lock();
-        try {
-            boolean isChair = Optional.ofNullable(sessionId)
-                    .map(sid -> sid.equals(chairSessionId))
-                    .orElse(false);
-            log.debug("Room[{}] isChairSession check: sessionId={}, currentChairId={}, result={}", 
-                     roomCode, sessionId, chairSessionId, isChair);
-            return isChair;
-        } finally {
-            lock.unlock();
-        }
+        String chairSessionId = state.chairSessionId();
+        boolean isChair = Optional.ofNullable(sessionId)
+                .map(sid -> sid.equals(chairSessionId))
+                .orElse(false);
+        log.debug("Room[{}] isChairSession check: sessionId={}, currentChairId={}, result={}", 
+                 roomCode, sessionId, chairSessionId, isChair);
+        return isChair;
     }
 
     public boolean hasChair() {
-        lock.lock();
-        try {
-            boolean hasChair = chairSessionId != null;
-            log.debug("Room[{}] hasChair check: chairSessionId={}, result={}", 
-                     roomCode, chairSessionId, hasChair);
-            return hasChair;
-        } finally {
-            lock.unlock();
-        }
+        String chairSessionId = state.chairSessionId();
+        boolean hasChair = chairSessionId != null;
+        log.debug("Room[{}] hasChair check: chairSessionId={}, result={}", 
+                 roomCode, chairSessionId, hasChair);
+        return hasChair;
     }
 
-    public void assumeChairRole(String sessionId) {
-        lock.lock();
-        try {
+    public boolean assumeChairRole(String sessionId) {
+        return changes(() -> {
+            RoomState s = state;
             log.info("Room[{}] assumeChairRole attempt: requestingSessionId={}, currentChairId={}", 
-                     roomCode, sessionId, chairSessionId);
+                     roomCode, sessionId, s.chairSessionId());
             
             if (isChairSession(sessionId)) {
                 log.info("Room[{}] assumeChairRole: Session {} is already the chair, no-op", 
@@ -248,62 +250,42 @@ public class Room {
                 return; // Already the chair
             }
             
-            if (chairSessionId == null) {
-                chairSessionId = sessionId;
+            if (s.chairSessionId() == null) {
+                publish(s.withChairSessionId(sessionId));
                 log.info("Room[{}] assumeChairRole: Successfully assigned chair role to session {}", 
                          roomCode, sessionId);
             } else {
                 log.warn("Room[{}] assumeChairRole: Chair role already occupied by session {}, rejecting request from {}", 
-                         roomCode, chairSessionId, sessionId);
+                         roomCode, s.chairSessionId(), sessionId);
                 throw new ChairAccessException("Chair role is already occupied", this.roomCode, sessionId);
             }
-        } finally {
-            lock.unlock();
-        }
+        });
     }
 
-    public void releaseChairRole(String sessionId) {
-        lock.lock();
-        try {
+    public boolean releaseChairRole(String sessionId) {
+        return changes(() -> {
+            RoomState s = state;
             log.info("Room[{}] releaseChairRole attempt: requestingSessionId={}, currentChairId={}", 
-                     roomCode, sessionId, chairSessionId);
+                     roomCode, sessionId, s.chairSessionId());
             
             Optional.ofNullable(sessionId)
-                    .filter(sid -> sid.equals(chairSessionId))
+                    .filter(sid -> sid.equals(s.chairSessionId()))
                     .ifPresentOrElse(
                         sid -> {
-                            chairSessionId = null;
+                            publish(s.withChairSessionId(null));
                             log.info("Room[{}] releaseChairRole: Successfully released chair role from session {}", 
                                      roomCode, sessionId);
                         },
                         () -> log.debug("Room[{}] releaseChairRole: Session {} is not the chair or null, no action taken", 
                                        roomCode, sessionId)
                     );
-        } finally {
-            lock.unlock();
-        }
-    }
-
-    private int findIndexByNameUnsafe(String name) {
-        for (int i = 0; i < queue.size(); i++) {
-            if (queue.get(i).name().equalsIgnoreCase(name))
-                return i;
-        }
-        return -1;
-    }
-
-    private int findIndexByIdUnsafe(String id) {
-        for (int i = 0; i < queue.size(); i++) {
-            if (queue.get(i).id().equals(id))
-                return i;
-        }
-        return -1;
+        });
     }
 
     private void requireChairAccess(String sessionId) {
         if (!isChairSession(sessionId)) {
             log.error("Room[{}] requireChairAccess: Access denied for session {} (current chair: {})", 
-                     roomCode, sessionId, chairSessionId);
+                     roomCode, sessionId, state.chairSessionId());
             throw new ChairAccessException("Chair access required for this operation", this.roomCode, sessionId);
         }
         log.debug("Room[{}] requireChairAccess: Access granted for chair session {}", 
@@ -312,356 +294,341 @@ public class Room {
 
     // DDD methods - encapsulate internal state management
 
-    public void nextParticipant(String sessionId) {
-        lock.lock();
-        try {
+    public boolean nextParticipant(String sessionId) {
+        return changes(() -> {
             requireChairAccess(sessionId);
-            current = null;
-            if (!queue.isEmpty()) {
-                Participant next = queue.remove(0);
-                current = new Current(next, Instant.now().getEpochSecond(), 0, true, defaultLimitSec);
-                log.info("Room[{}] nextParticipant: Set {} as current speaker (by chair session {})", 
-                         roomCode, next.name(), sessionId);
-            } else {
+            RoomState s = state;
+            if (s.queue().isEmpty()) {
+                if (s.current() != null) {
+                    publish(s.withCurrent(null));
+                }
                 log.info("Room[{}] nextParticipant: No participants in queue (by chair session {})", 
                          roomCode, sessionId);
+                return;
             }
-        } finally {
-            lock.unlock();
-        }
+            Participant next = queue.poll();
+            Current current = new Current(next, Instant.now().getEpochSecond(), 0, true, s.defaultLimitSec());
+            publish(s.withQueue(queue.view()).withCurrent(current));
+            log.info("Room[{}] nextParticipant: Set {} as current speaker (by chair session {})", 
+                     roomCode, next.name(), sessionId);
+        });
     }
 
-    public void withdrawParticipant(String name) {
-        lock.lock();
-        try {
-            int idx = findIndexByNameUnsafe(name);
+    public boolean withdrawParticipant(String name) {
+        return changes(() -> {
+            RoomState s = state;
+            int idx = queue.withdraw(name);
             if (idx >= 0) {
-                queue.remove(idx);
+                publish(s.withQueue(queue.view()));
                 log.info("Room[{}] withdrawParticipant: Removed {} from queue at position {}", 
                          roomCode, name, idx);
             } else {
                 log.debug("Room[{}] withdrawParticipant: Participant {} not found in queue", 
                          roomCode, name);
             }
-        } finally {
-            lock.unlock();
-        }
+        });
     }
 
-    public void startTimer(String sessionId) {
-        lock.lock();
-        try {
+    public boolean startTimer(String sessionId) {
+        return changes(() -> {
             requireChairAccess(sessionId);
+            RoomState s = state;
+            Current current = s.current();
             if (current == null)
                 return;
             if (!current.running()) {
                 long nowSec = Instant.now().getEpochSecond();
-                current = new Current(current.entry(), nowSec, current.elapsedMs(), true, current.limitSec());
+                publish(s.withCurrent(new Current(current.entry(), nowSec, current.elapsedMs(), true, current.limitSec())));
             }
-        } finally {
-            lock.unlock();
-        }
+        });
     }
 
-    public void pauseTimer(String sessionId) {
-        lock.lock();
-        try {
+    public boolean pauseTimer(String sessionId) {
+        return changes(() -> {
             requireChairAccess(sessionId);
+            RoomState s = state;
+            Current current = s.current();
             if (current == null)
                 return;
             if (current.running()) {
                 long nowSec = Instant.now().getEpochSecond();
                 int addMs = (int) ((nowSec - current.startedAtSec()) * 1000);
-                current = new Current(current.entry(), current.startedAtSec(),
-                        current.elapsedMs() + addMs, false, current.limitSec());
+                publish(s.withCurrent(new Current(current.entry(), current.startedAtSec(),
+                        current.elapsedMs() + addMs, false, current.limitSec())));
             }
-        } finally {
-            lock.unlock();
-        }
+        });
     }
 
-    public void resetTimer(String sessionId) {
-        lock.lock();
-        try {
+    public boolean resetTimer(String sessionId) {
+        return changes(() -> {
             requireChairAccess(sessionId);
+            RoomState s = state;
+            Current current = s.current();
             if (current == null)
                 return;
             long nowSec = Instant.now().getEpochSecond();
-            current = new Current(current.entry(), nowSec, 0, true, current.limitSec());
-        } finally {
-            lock.unlock();
-        }
+            publish(s.withCurrent(new Current(current.entry(), nowSec, 0, true, current.limitSec())));
+        });
     }
 
-    public void updateLimit(String sessionId, int seconds) {
-        lock.lock();
-        try {
+    public boolean updateLimit(String sessionId, int seconds) {
+        return changes(() -> {
             requireChairAccess(sessionId);
-            defaultLimitSec = seconds;
+            RoomState s = state;
+            Current current = s.current();
+            if (s.defaultLimitSec() == seconds && (current == null || current.limitSec() == seconds)) {
+                return;
+            }
             if (current != null) {
                 current = new Current(current.entry(), current.startedAtSec(),
                         current.elapsedMs(), current.running(), seconds);
             }
-        } finally {
-            lock.unlock();
-        }
+            publish(s.withDefaultLimitSec(seconds).withCurrent(current));
+        });
     }
 
-    public void addParticipantToQueue(Participant participant) {
-        lock.lock();
-        try {
-            int existingById = findIndexByIdUnsafe(participant.id());
-            if (existingById >= 0) {
-                queue.set(existingById, participant);
+    public boolean addParticipantToQueue(Participant participant) {
+        return changes(() -> {
+            RoomState s = state;
+            Participant queued = queue.findById(participant.id());
+            if (queued != null) {
+                if (queued.name().equals(participant.name())) {
+                    log.debug("Room[{}] addParticipantToQueue: {} already queued for session {}, no-op",
+                             roomCode, participant.name(), participant.id());
+                    return; // Keeps the original request time
+                }
+                queue.replace(participant);
+                publish(s.withQueue(queue.view()));
                 log.info("Room[{}] addParticipantToQueue: Updated {} for session {}", 
                          roomCode, participant.name(), participant.id());
                 return;
             }
-            if (current != null && current.entry().name().equalsIgnoreCase(participant.name())) {
+            if (s.current() != null && s.current().entry().name().equalsIgnoreCase(participant.name())) {
                 log.debug("Room[{}] addParticipantToQueue: {} is already the current speaker, not adding to queue", 
                          roomCode, participant.name());
                 return;
             }
-            if (findIndexByNameUnsafe(participant.name()) >= 0) {
+            if (queue.containsName(participant.name())) {
                 log.debug("Room[{}] addParticipantToQueue: {} is already in queue, not adding duplicate", 
                          roomCode, participant.name());
                 return;
             }
             queue.add(participant);
+            publish(s.withQueue(queue.view()));
             log.info("Room[{}] addParticipantToQueue: Added {} to queue (queue size now: {})", 
                      roomCode, participant.name(), queue.size());
-        } finally {
-            lock.unlock();
-        }
+        });
     }
 
     // Polling methods
-    public void startPoll(String sessionId, String question, String pollType, List<String> options,
+    public boolean startPoll(String sessionId, String question, String pollType, List<String> options,
             Integer votesPerParticipant) {
-        lock.lock();
-        try {
+        return changes(() -> {
             requireChairAccess(sessionId);
-            this.pollQuestion = question;
-            this.pollType = pollType;
-            this.pollStatus = "ACTIVE";
-            this.pollResults.clear();
-            this.sessionVotes.clear();
-            this.sessionMultiVotes.clear();
-            this.sessionDotVotes.clear();
-            this.pollOptions = null;
-            this.votesPerParticipant = votesPerParticipant != null ? votesPerParticipant : 1;
-
-            // Initialize results based on poll type
-            if ("YES_NO".equals(pollType)) {
-                this.pollResults.put("YES", 0);
-                this.pollResults.put("NO", 0);
-            } else if ("GRADIENTS".equals(pollType)) {
-                // Initialize 8 options for Gradients of Agreement
-                this.pollResults.put("OPT_1", 0);
-                this.pollResults.put("OPT_2", 0);
-                this.pollResults.put("OPT_3", 0);
-                this.pollResults.put("OPT_4", 0);
-                this.pollResults.put("OPT_5", 0);
-                this.pollResults.put("OPT_6", 0);
-                this.pollResults.put("OPT_7", 0);
-                this.pollResults.put("OPT_8", 0);
-            } else if ("MULTISELECT".equals(pollType) || "MULTISELECT_MULTIPLE".equals(pollType)
-                    || "DOT_VOTING".equals(pollType)) {
-                // Initialize options for multiselect poll (single selection, multiple selection, dot voting)
-                if (options != null && !options.isEmpty()) {
-                    this.pollOptions = new ArrayList<>(options);
-                    for (int i = 0; i < options.size(); i++) {
-                        this.pollResults.put("OPT_" + i, 0);
-                    }
-                }
-            }
-        } finally {
-            lock.unlock();
-        }
+            closeLiveVotes();
+
+            List<String> pollOptions = null;
+            if (("MULTISELECT".equals(pollType) || "MULTISELECT_MULTIPLE".equals(pollType) || "DOT_VOTING".equals(pollType))
+                    && options != null && !options.isEmpty()) {
+                pollOptions = List.copyOf(options);
+            }
+            // Options follow the poll type: YES/NO, 8 Gradients of Agreement, or one per multiselect option
+            PollTally tally = PollTally.forPoll(pollType, options);
+            SingleChoiceVotes liveVotes = isSingleChoice(pollType) ? new SingleChoiceVotes(tally.size()) : null;
+            ballots.reset(liveVotes == null ? tally.size() : 0);
+            RoomState.Poll poll = new RoomState.Poll(question, pollType, tally, liveVotes,
+                    pollOptions, votesPerParticipant != null ? votesPerParticipant : 1);
+            publish(state.withPoll(poll, "ACTIVE"));
+        });
+    }
+
+    private static boolean isSingleChoice(String pollType) {
+        return !"DOT_VOTING".equals(pollType) && !"MULTISELECT_MULTIPLE".equals(pollType);
+    }
+
+    /**
+     * Returns whether the active poll counts votes outside the mailbox, so callers can cast
+     * them from their own thread instead of queueing them behind other commands.
+     */
+    public boolean countsVotesInParallel() {
+        RoomState current = state;
+        return "ACTIVE".equals(current.pollStatus()) && current.poll().liveVotes() != null;
     }
 
     public boolean castVote(String sessionId, String vote) {
-        lock.lock();
-        try {
+        // Single selection counts outside the mailbox, so a flood of votes never queues behind itself
+        RoomState current = state;
+        if ("ACTIVE".equals(current.pollStatus()) && current.poll().liveVotes() != null) {
+            return castSingleChoiceVote(current.poll(), sessionId, vote);
+        }
+        return mailbox.call(() -> {
+            RoomState s = state;
             // Check if poll is active
-            if (!"ACTIVE".equals(pollStatus)) {
+            if (!"ACTIVE".equals(s.pollStatus())) {
                 return false;
             }
+            RoomState.Poll poll = s.poll();
+            if (poll.liveVotes() != null) {
+                return castSingleChoiceVote(poll, sessionId, vote); // Started while this vote was queued
+            }
+            PollTally tally = poll.tally();
 
             // Handle dot voting: supports stacking multiple votes on the same option
             // Vote key is "OPT_N" to add a dot, or "OPT_N_DOWN" to remove one
-            if ("DOT_VOTING".equals(pollType)) {
+            if ("DOT_VOTING".equals(poll.type())) {
                 boolean isDown = vote.endsWith("_DOWN");
                 String baseKey = isDown ? vote.substring(0, vote.length() - 5) : vote;
-                if (!pollResults.containsKey(baseKey)) return false;
-
-                Map<String, Integer> dotVotesForSession =
-                        sessionDotVotes.computeIfAbsent(sessionId, k -> new HashMap<>());
-                int currentCount = dotVotesForSession.getOrDefault(baseKey, 0);
-                int totalVotesForSession =
-                        dotVotesForSession.values().stream().mapToInt(Integer::intValue).sum();
+                int ordinal = tally.ordinalOf(baseKey);
+                if (ordinal < 0) return false;
 
                 if (isDown) {
-                    if (currentCount <= 0) return false;
-                    dotVotesForSession.put(baseKey, currentCount - 1);
-                    pollResults.put(baseKey, pollResults.get(baseKey) - 1);
+                    if (ballots.count(sessionId, ordinal) <= 0) return false;
+                    ballots.adjust(sessionId, ordinal, -1);
+                    publishTally(s, tally.adjusted(ordinal, -1));
                 } else {
-                    if (totalVotesForSession >= votesPerParticipant) return false;
-                    dotVotesForSession.put(baseKey, currentCount + 1);
-                    pollResults.put(baseKey, pollResults.get(baseKey) + 1);
+                    if (ballots.total(sessionId) >= poll.votesPerParticipant()) return false;
+                    ballots.adjust(sessionId, ordinal, 1);
+                    publishTally(s, tally.adjusted(ordinal, 1));
                 }
                 return true;
             }
 
             // Check if vote is valid (for non-DOT_VOTING poll types)
-            if (!pollResults.containsKey(vote)) {
+            int ordinal = tally.ordinalOf(vote);
+            if (ordinal < 0) {
                 return false;
             }
 
-            // Handle multiple selection differently
-            if ("MULTISELECT_MULTIPLE".equals(pollType)) {
-                Set<String> currentVotes = sessionMultiVotes.computeIfAbsent(sessionId, k -> new HashSet<>());
-
-                // Toggle vote: if already voted for this option, remove it (deselect)
-                if (currentVotes.contains(vote)) {
-                    currentVotes.remove(vote);
-                    pollResults.put(vote, pollResults.get(vote) - 1);
-                } else {
-                    // Check if participant has reached max votes
-                    if (currentVotes.size() >= votesPerParticipant) {
-                        return false; // Max votes reached, cannot add more
-                    }
-                    currentVotes.add(vote);
-                    pollResults.put(vote, pollResults.get(vote) + 1);
-                }
-                return true;
+            // Multiple selection; single selection was handled before queueing
+            // Toggle vote: if already voted for this option, remove it (deselect)
+            if (ballots.count(sessionId, ordinal) > 0) {
+                ballots.adjust(sessionId, ordinal, -1);
+                publishTally(s, tally.adjusted(ordinal, -1));
             } else {
-                // Single selection (original behavior)
-                // Check if session has already voted - if so, remove the old vote
-                String previousVote = sessionVotes.get(sessionId);
-                if (previousVote != null) {
-                    // Decrement previous vote
-                    pollResults.put(previousVote, pollResults.get(previousVote) - 1);
+                // Check if participant has reached max votes
+                if (ballots.total(sessionId) >= poll.votesPerParticipant()) {
+                    return false; // Max votes reached, cannot add more
                 }
-
-                // Record new vote
-                pollResults.put(vote, pollResults.get(vote) + 1);
-                sessionVotes.put(sessionId, vote);
-                return true;
+                ballots.adjust(sessionId, ordinal, 1);
+                publishTally(s, tally.adjusted(ordinal, 1));
             }
-        } finally {
-            lock.unlock();
+            return true;
+        });
+    }
+
+    // If the session has already voted, its vote moves from the old option to the new one
+    private boolean castSingleChoiceVote(RoomState.Poll poll, String sessionId, String vote) {
+        int ordinal = poll.tally().ordinalOf(vote);
+        // Fails if the poll was ended, closed or replaced since its state was read
+        if (ordinal < 0 || !poll.liveVotes().vote(sessionId, ordinal)) {
+            return false;
         }
+        version.incrementAndGet();
+        lastActivityNanos = System.nanoTime();
+        return true;
+    }
+
+    private void publishTally(RoomState s, PollTally tally) {
+        publish(s.withPoll(s.poll().withTally(tally), s.pollStatus()));
     }
 
-    public void endPoll(String sessionId) {
-        lock.lock();
-        try {
+    public boolean endPoll(String sessionId) {
+        return changes(() -> {
             requireChairAccess(sessionId);
-            if (pollQuestion != null && "ACTIVE".equals(pollStatus)) {
+            RoomState s = state;
+            if (s.poll() != null && s.poll().question() != null && "ACTIVE".equals(s.pollStatus())) {
+                // Freeze the live counts; votes racing with this are either counted or rejected
+                RoomState.Poll poll = s.poll().closed();
                 // Store results for display
-                int totalVotes = pollResults.values().stream().mapToInt(Integer::intValue).sum();
-                lastPollResults = new PollResults(
-                        pollQuestion,
-                        pollType,
-                        new HashMap<>(pollResults),
-                        totalVotes,
-                        pollOptions != null ? List.copyOf(pollOptions) : null);
+                PollResults lastPollResults = new PollResults(
+                        poll.question(),
+                        poll.type(),
+                        poll.tally().toMap(),
+                        poll.tally().total(),
+                        poll.options());
 
                 // Mark poll as ended (results shown in overlay to participants)
-                pollStatus = "ENDED";
+                publish(s.withLastPollResults(lastPollResults).withPoll(poll, "ENDED"));
             }
-        } finally {
-            lock.unlock();
-        }
+        });
     }
 
-    public void closePoll(String sessionId) {
-        lock.lock();
-        try {
+    public boolean closePoll(String sessionId) {
+        return changes(() -> {
             requireChairAccess(sessionId);
-            if ("ENDED".equals(pollStatus)) {
+            RoomState s = state;
+            if ("ENDED".equals(s.pollStatus())) {
                 // Clear active poll state, keep lastPollResults
-                pollQuestion = null;
-                pollType = null;
-                pollStatus = "CLOSED";
-                pollResults.clear();
-                sessionVotes.clear();
-                sessionMultiVotes.clear();
-                sessionDotVotes.clear();
-                pollOptions = null;
-            }
-        } finally {
-            lock.unlock();
-        }
+                ballots.reset(0);
+                publish(s.withPoll(null, "CLOSED"));
+            }
+        });
     }
 
-    public void cancelPoll(String sessionId) {
-        lock.lock();
-        try {
+    public boolean cancelPoll(String sessionId) {
+        return changes(() -> {
             requireChairAccess(sessionId);
+            if (state.poll() == null && state.pollStatus() == null) {
+                return; // Nothing to cancel
+            }
             // Clear all poll state without saving to lastResults
-            pollQuestion = null;
-            pollType = null;
-            pollStatus = null;
-            pollResults.clear();
-            sessionVotes.clear();
-            sessionMultiVotes.clear();
-            sessionDotVotes.clear();
-            pollOptions = null;
-        } finally {
-            lock.unlock();
+            closeLiveVotes();
+            ballots.reset(0);
+            publish(state.withPoll(null, null));
+        });
+    }
+
+    // Must be called on the mailbox before the current poll is replaced or dropped
+    private void closeLiveVotes() {
+        RoomState.Poll poll = state.poll();
+        if (poll != null) {
+            poll.closed();
         }
     }
 
     public boolean isPolling() {
-        lock.lock();
-        try {
-            return "ACTIVE".equals(pollStatus);
-        } finally {
-            lock.unlock();
-        }
+        return "ACTIVE".equals(state.pollStatus());
     }
 
-    public void updateRoomConfig(String sessionId, String topic, MeetingGoal meetingGoal,
+    public boolean updateRoomConfig(String sessionId, String topic, MeetingGoal meetingGoal,
             ParticipationFormat participationFormat, DecisionRule decisionRule, Deliverable deliverable,
             List<String> agenda) {
-        lock.lock();
-        try {
+        return changes(() -> {
             requireChairAccess(sessionId);
-            this.topic = topic;
-            this.meetingGoal = meetingGoal;
-            this.participationFormat = participationFormat;
-            this.decisionRule = decisionRule;
-            this.deliverable = deliverable;
-            if (agenda == null || agenda.isEmpty()) {
-                this.agenda = null;
-                this.currentAgendaIndex = 0;
-            } else {
-                this.agenda = agenda.stream()
-                        .filter(s -> s != null && !s.isBlank())
-                        .map(s -> s.trim().length() > 80 ? s.trim().substring(0, 80) : s.trim())
+            RoomState s = state;
+            List<String> cleanedAgenda = null;
+            int currentAgendaIndex = 0;
+            if (agenda != null && !agenda.isEmpty()) {
+                cleanedAgenda = agenda.stream()
+                        .filter(a -> a != null && !a.isBlank())
+                        .map(a -> a.trim().length() > 80 ? a.trim().substring(0, 80) : a.trim())
                         .limit(10)
-                        .collect(java.util.stream.Collectors.toList());
-                this.currentAgendaIndex = Math.max(0, Math.min(this.currentAgendaIndex, this.agenda.size() - 1));
+                        .toList();
+                currentAgendaIndex = Math.max(0, Math.min(s.currentAgendaIndex(), cleanedAgenda.size() - 1));
             }
-        } finally {
-            lock.unlock();
-        }
+            RoomConfig config = new RoomConfig(topic, meetingGoal, participationFormat, decisionRule, deliverable, cleanedAgenda);
+            if (config.equals(s.config()) && currentAgendaIndex == s.currentAgendaIndex()) {
+                return;
+            }
+            publish(s.withConfig(config, currentAgendaIndex));
+        });
     }
 
-    public void navigateAgenda(String sessionId, String direction) {
-        lock.lock();
-        try {
+    public boolean navigateAgenda(String sessionId, String direction) {
+        return changes(() -> {
             requireChairAccess(sessionId);
+            RoomState s = state;
+            List<String> agenda = s.config().agenda();
             if (agenda == null || agenda.isEmpty()) return;
+            int currentAgendaIndex = s.currentAgendaIndex();
             if ("next".equals(direction)) {
                 currentAgendaIndex = Math.min(currentAgendaIndex + 1, agenda.size() - 1);
             } else if ("prev".equals(direction)) {
                 currentAgendaIndex = Math.max(currentAgendaIndex - 1, 0);
             }
-        } finally {
-            lock.unlock();
-        }
+            if (currentAgendaIndex != s.currentAgendaIndex()) {
+                publish(s.withConfig(s.config(), currentAgendaIndex));
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package de.koderman.domain;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hands out free room codes. One bit per code in the whole code space (about 180 KB), set
+ * with a CAS, so a code is reserved the moment it is allocated and two callers can never get
+ * the same one. Allocation starts at a random code and takes the next free bit; with at most
+ * a few thousand rooms among 1.5 million codes that is almost always the first word probed.
+ */
+final class RoomCodeAllocator {
+    private final AtomicLongArray used = new AtomicLongArray((RoomCodes.SPACE + 63) / 64);
+
+    RoomCodeAllocator() {
+        int tail = RoomCodes.SPACE % 64;
+        if (tail != 0) {
+            used.set(used.length() - 1, -1L << tail); // Bits past the end of the code space never free up
+        }
+    }
+
+    /**
+     * Reserves a random free code and returns its number.
+     */
+    int allocate() {
+        int start = ThreadLocalRandom.current().nextInt(RoomCodes.SPACE);
+        int words = used.length();
+        int word = start >>> 6;
+        for (int probed = 0; probed <= words; probed++, word = (word + 1) % words) {
+            long bits;
+            while ((bits = used.get(word)) != -1L) {
+                long free = ~bits;
+                long fromStart = free & (-1L << (start & 63));
+                int bit = Long.numberOfTrailingZeros(fromStart != 0 ? fromStart : free);
+                if (used.compareAndSet(word, bits, bits | (1L << bit))) {
+                    return word * 64 + bit;
+                }
+            }
+        }
+        throw new IllegalStateException("No free room code left");
+    }
+
+    /**
+     * Marks the code as taken; returns false if it already was.
+     */
+    boolean reserve(int index) {
+        long mask = 1L << (index & 63);
+        long bits;
+        do {
+            bits = used.get(index >>> 6);
+            if ((bits & mask) != 0) {
+                return false;
+            }
+        } while (!used.compareAndSet(index >>> 6, bits, bits | mask));
+        return true;
+    }
+
+    void release(int index) {
+        long mask = 1L << (index & 63);
+        long bits;
+        do {
+            bits = used.get(index >>> 6);
+        } while (!used.compareAndSet(index >>> 6, bits, bits & ~mask));
+    }
+}
@@ -0,0 +1,82 @@
+package de.koderman.domain;
+
+/**
+ * The room code space: four characters over a 35-symbol alphabet, numbered 0 to SPACE - 1
+ * as base-35 numbers.
+ */
+final class RoomCodes {
+    static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ123456789"; // No "0", it reads as "O"
+    static final int LENGTH = 4;
+    static final int SPACE = 35 * 35 * 35 * 35;
+
+    private RoomCodes() {}
+
+    /**
+     * Returns the number of a room code, or -1 if the string is not in the code space.
+     */
+    static int indexOf(String code) {
+        if (code == null || code.length() != LENGTH) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            int digit = digitOf(code.charAt(i));
+            if (digit < 0) {
+                return -1;
+            }
+            index = index * 35 + digit;
+        }
+        return index;
+    }
+
+    /**
+     * Like indexOf, but reads the code the way clients may send it: in any case, and with "0"
+     * for "O". Allocates nothing, so inbound messages find their room without string work.
+     */
+    static int parse(CharSequence code) {
+        if (code == null || code.length() != LENGTH) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            char c = code.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                c = (char) (c - 'a' + 'A');
+            } else if (c == '0') {
+                c = 'O';
+            }
+            int digit = digitOf(c);
+            if (digit < 0) {
+                return -1;
+            }
+            index = index * 35 + digit;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the code the way rooms are keyed: upper case, with "0" read as "O".
+     */
+    static String normalize(String code) {
+        return code == null ? null : code.toUpperCase().replace("0", "O");
+    }
+
+    static String codeOf(int index) {
+        char[] code = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            code[i] = ALPHABET.charAt(index % 35);
+            index /= 35;
+        }
+        return new String(code);
+    }
+
+    private static int digitOf(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= '1' && c <= '9') {
+            return 26 + c - '1';
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,80 @@
+package de.koderman.domain;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Decides which rooms RoomRepository evicts when it reaps or runs out of room.
+ * Policies only rank rooms; the repository removes them.
+ */
+public interface RoomEvictionPolicy {
+
+    /**
+     * A room as seen by a policy: when it last changed and how many sessions are tracked in it.
+     */
+    record RoomUsage(Room room, long lastActivityNanos, int sessions) {
+
+        long idleNanos(long nowNanos) {
+            return nowNanos - lastActivityNanos;
+        }
+    }
+
+    /**
+     * Returns the rooms to evict, most evictable first. excess is how many rooms have to go to
+     * get back down to the target count; zero or less means none have to.
+     */
+    List<RoomUsage> select(List<RoomUsage> rooms, int excess, long nowNanos);
+
+    /**
+     * Evicts the rooms that have been idle longest, only as many as needed.
+     */
+    static RoomEvictionPolicy leastRecentlyActive() {
+        return (rooms, excess, nowNanos) -> excess <= 0 ? List.of() : rooms.stream()
+                .sorted(Comparator.comparingLong(RoomUsage::lastActivityNanos))
+                .limit(excess)
+                .toList();
+    }
+
+    /**
+     * Evicts every room idle for longer than ttl, and more of the least recently active ones
+     * if that is not enough.
+     */
+    static RoomEvictionPolicy idleTtl(Duration ttl) {
+        long ttlNanos = ttl.toNanos();
+        return (rooms, excess, nowNanos) -> {
+            List<RoomUsage> byIdle = rooms.stream()
+                    .sorted(Comparator.comparingLong(RoomUsage::lastActivityNanos))
+                    .toList();
+            int expired = 0;
+            while (expired < byIdle.size() && byIdle.get(expired).idleNanos(nowNanos) > ttlNanos) {
+                expired++;
+            }
+            return byIdle.subList(0, Math.min(byIdle.size(), Math.max(expired, excess)));
+        };
+    }
+
+    /**
+     * Evicts rooms with the fewest tracked sessions first, so a full room is only evicted once
+     * no emptier one is left; ties go to the least recently active.
+     */
+    static RoomEvictionPolicy sizeAware() {
+        return (rooms, excess, nowNanos) -> excess <= 0 ? List.of() : rooms.stream()
+                .sorted(Comparator.comparingInt(RoomUsage::sessions)
+                        .thenComparingLong(RoomUsage::lastActivityNanos))
+                .limit(excess)
+                .toList();
+    }
+
+    /**
+     * Returns the policy configured by name: "lru", "idle-ttl" or "size-aware".
+     */
+    static RoomEvictionPolicy named(String name, Duration idleTtl) {
+        return switch (name == null ? "lru" : name.toLowerCase()) {
+            case "lru" -> leastRecentlyActive();
+            case "idle-ttl" -> idleTtl(idleTtl);
+            case "size-aware" -> sizeAware();
+            default -> throw new IllegalArgumentException("Unknown room eviction policy: " + name);
+        };
+    }
+}
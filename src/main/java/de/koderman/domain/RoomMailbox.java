@@ -0,0 +1,109 @@
+package de.koderman.domain;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Serial command queue owned by a single Room. At most one thread drains it at a time, so
+ * everything queued here runs one after another without locks. An idle mailbox is drained
+ * by the thread that calls into it; queued work left behind is handed to a virtual thread.
+ */
+@Slf4j
+final class RoomMailbox {
+    private static final Executor DRAINERS = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final String roomCode;
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile Thread owner;
+
+    RoomMailbox(String roomCode) {
+        this.roomCode = roomCode;
+    }
+
+    /**
+     * Queues a command and returns without waiting for it.
+     */
+    void execute(Runnable command) {
+        queue.add(command);
+        if (scheduled.compareAndSet(false, true)) {
+            DRAINERS.execute(() -> drain(null));
+        }
+    }
+
+    void run(Runnable command) {
+        call(() -> {
+            command.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the command after everything queued before it and returns its result.
+     * Exceptions thrown by the command are rethrown to the caller.
+     */
+    <T> T call(Supplier<T> command) {
+        if (owner == Thread.currentThread()) {
+            return command.get(); // Already the owner, e.g. a queued command calling back into the room
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        queue.add(() -> {
+            try {
+                result.complete(command.get());
+            } catch (Throwable ex) {
+                result.completeExceptionally(ex);
+            }
+        });
+        if (scheduled.compareAndSet(false, true)) {
+            drain(result);
+        }
+        try {
+            return result.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (ex.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw ex;
+        }
+    }
+
+    // Runs queued commands until the queue is empty, or, when draining on behalf of a caller,
+    // until that caller's command is done; the rest then moves to a drainer thread.
+    private void drain(CompletableFuture<?> callerResult) {
+        owner = Thread.currentThread();
+        try {
+            Runnable next;
+            while ((next = queue.poll()) != null) {
+                try {
+                    next.run();
+                } catch (RuntimeException ex) {
+                    log.error("Room[{}] mailbox command failed", roomCode, ex);
+                }
+                if (callerResult != null && callerResult.isDone() && !queue.isEmpty()) {
+                    owner = null;
+                    DRAINERS.execute(() -> drain(null));
+                    return;
+                }
+            }
+        } finally {
+            if (owner == Thread.currentThread()) {
+                owner = null;
+                scheduled.set(false);
+            }
+        }
+        // A command added between the last poll and the reset above still needs a drainer
+        if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+            DRAINERS.execute(() -> drain(null));
+        }
+    }
+}
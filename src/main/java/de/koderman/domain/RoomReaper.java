@@ -0,0 +1,56 @@
+package de.koderman.domain;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Evicts rooms in the background, so createRoom finds free space instead of evicting on the
+ * request path. Which rooms go is up to the repository's {@link RoomEvictionPolicy}.
+ */
+@Slf4j
+@Component
+public class RoomReaper {
+    @Value("${app.room.reaper-interval-sec:10}")
+    private long intervalSec = 10;
+
+    private final RoomRepository roomRepository;
+    private ThreadPoolTaskScheduler scheduler;
+
+    public RoomReaper(RoomRepository roomRepository) {
+        this.roomRepository = roomRepository;
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("room-reaper-");
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+        scheduler.scheduleWithFixedDelay(this::reap, Duration.ofSeconds(intervalSec));
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private void reap() {
+        try {
+            int evicted = roomRepository.reap();
+            if (evicted > 0) {
+                log.info("Room reaper evicted {} room(s)", evicted);
+            }
+        } catch (RuntimeException ex) {
+            log.error("Room reaper failed", ex);
+        }
+    }
+}
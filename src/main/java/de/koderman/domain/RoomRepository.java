@@ -3,105 +3,266 @@ package de.koderman.domain;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
 @Slf4j
 @Component
 public class RoomRepository {
     @Value("${app.room.max-rooms:2500}")
     private int maxRooms = 100; // Default for manual instantiation in tests
+
+    @Value("${app.room.eviction-policy:lru}")
+    private String evictionPolicyName = "lru";
+
+    @Value("${app.room.idle-ttl-minutes:240}")
+    private long idleTtlMinutes = 240;
+
+    @Value("${app.room.reap-min-idle-minutes:30}")
+    private long reapMinIdleMinutes = 30;
+
+    // Rooms evicted per reap, so a backlog is worked off over several runs instead of in one long pass
+    private static final int REAP_BATCH = 50;
+
+    private RoomEvictionPolicy evictionPolicy = RoomEvictionPolicy.leastRecentlyActive();
     
     private final ConcurrentHashMap<String, Room> roomsByCode = new ConcurrentHashMap<>();
+    // Rooms whose code is in the code space, indexed by its number (about 6 MB); lookups by code
+    // go here and only fall back to roomsByCode for other codes
+    private final AtomicReferenceArray<Room> roomsByIndex = new AtomicReferenceArray<>(RoomCodes.SPACE);
     private final ConcurrentHashMap<String, String> sessionToRoomCode = new ConcurrentHashMap<>();
-    // TreeMap sorted by creation timestamp for efficient oldest room lookup
-    private final TreeMap<Long, Room> roomsByTimestamp = new TreeMap<>();
-    private final Object roomCreationLock = new Object();
+    // Reverse of sessionToRoomCode, so a room's sessions are found without scanning every session;
+    // only changed inside sessionToRoomCode.compute for the session, and each room's set only
+    // inside compute on this map, which keeps both in step
+    private final ConcurrentHashMap<String, Set<String>> sessionsByRoomCode = new ConcurrentHashMap<>();
+    // Rooms created plus slots reserved by createRoom calls in flight; never exceeds maxRooms
+    private final AtomicInteger roomCount = new AtomicInteger();
+    private final RoomCodeAllocator codeAllocator = new RoomCodeAllocator();
+    private final List<Consumer<String>> roomRemovedListeners = new CopyOnWriteArrayList<>();
 
     @jakarta.annotation.PostConstruct
     public void logConfiguredLimit() {
-        log.info("RoomRepository initialized with maxRooms: {}", maxRooms);
+        if (maxRooms <= 0) {
+            // No slot could ever be reserved, and there would be nothing to evict for one
+            throw new IllegalStateException("app.room.max-rooms must be positive, got " + maxRooms);
+        }
+        evictionPolicy = RoomEvictionPolicy.named(evictionPolicyName, Duration.ofMinutes(idleTtlMinutes));
+        log.info("RoomRepository initialized with maxRooms: {}, eviction policy: {}", maxRooms, evictionPolicyName);
+    }
+
+    /**
+     * Registers a callback receiving the code of every room that is destroyed or evicted,
+     * so components keeping per-room state can drop it.
+     */
+    public void addRoomRemovedListener(Consumer<String> listener) {
+        roomRemovedListeners.add(listener);
+    }
+
+    private void fireRoomRemoved(String roomCode) {
+        roomRemovedListeners.forEach(listener -> listener.accept(roomCode));
     }
 
     public Optional<Room> getByCode(String roomCode) {
-        return Optional.ofNullable(roomsByCode.get(roomCode));
+        return Optional.ofNullable(lookup(roomCode));
     }
     
     public Room getByCodeOrThrow(String roomCode) {
-        Room room = roomsByCode.get(roomCode);
+        Room room = lookup(roomCode);
+        if (room == null) {
+            log.warn("Room not found: {}", roomCode);
+            throw new RoomNotFoundException(roomCode);
+        }
+        return room;
+    }
+
+    /**
+     * Looks up a room by the code as clients send it, in any case and with "0" for "O".
+     * A code in the code space is parsed to its number without creating any strings.
+     */
+    public Room getByClientCodeOrThrow(String clientCode) {
+        int index = RoomCodes.parse(clientCode);
+        Room room = index >= 0 ? roomsByIndex.get(index) : roomsByCode.get(RoomCodes.normalize(clientCode));
         if (room == null) {
+            String roomCode = RoomCodes.normalize(clientCode);
             log.warn("Room not found: {}", roomCode);
             throw new RoomNotFoundException(roomCode);
         }
         return room;
     }
+
+    private Room lookup(String roomCode) {
+        int index = RoomCodes.indexOf(roomCode);
+        return index >= 0 ? roomsByIndex.get(index) : roomsByCode.get(roomCode);
+    }
     
+    /**
+     * Creates a room under a random free code. The code is reserved as it is allocated, so
+     * no other room can get it.
+     */
+    public Room createRoom() {
+        while (true) {
+            Room room = insertRoom(RoomCodes.codeOf(codeAllocator.allocate()));
+            if (room != null) {
+                return room;
+            }
+            // The code was taken through createRoom(String) meanwhile and stays reserved for that room
+        }
+    }
+
+    /**
+     * Returns the room with this code, creating it if needed.
+     */
     public Room createRoom(String roomCode) {
-        synchronized (roomCreationLock) {
-            // Check if room already exists
-            Room existingRoom = roomsByCode.get(roomCode);
+        while (true) {
+            Room existingRoom = lookup(roomCode);
             if (existingRoom != null) {
                 log.info("Room already exists: {}", roomCode);
                 return existingRoom;
             }
-            
-            // Before creating a new room, check if we've reached the limit
-            if (roomsByCode.size() >= maxRooms) {
-                log.warn("Room limit reached ({}), removing oldest room", maxRooms);
-                removeOldestRoom();
+            Room room = insertRoom(roomCode);
+            if (room != null) {
+                int index = RoomCodes.indexOf(roomCode);
+                if (index >= 0) {
+                    codeAllocator.reserve(index);
+                }
+                return room;
+            }
+        }
+    }
+
+    /**
+     * Creates the room unless one with this code exists, and returns it or null. Runs without a
+     * global lock: a slot is reserved on roomCount first, and released again if another caller
+     * created the same room in the meantime.
+     */
+    private Room insertRoom(String roomCode) {
+        reserveSlot();
+        int index = RoomCodes.indexOf(roomCode);
+        Room[] created = new Room[1];
+        roomsByCode.computeIfAbsent(roomCode, code -> {
+            created[0] = new Room(code);
+            if (index >= 0) {
+                roomsByIndex.set(index, created[0]);
+            }
+            return created[0];
+        });
+        if (created[0] == null) {
+            roomCount.decrementAndGet();
+            return null;
+        }
+        log.info("Created room: {} (total: {})", roomCode, roomCount.get());
+        return created[0];
+    }
+
+    // Call after the room left roomsByCode; a room created since under the same code keeps its entry
+    private void releaseCode(Room room) {
+        int index = RoomCodes.indexOf(room.getRoomCode());
+        if (index >= 0 && roomsByIndex.compareAndSet(index, room, null)) {
+            codeAllocator.release(index);
+        }
+    }
+
+    private void reserveSlot() {
+        while (true) {
+            int count = roomCount.get();
+            if (count < maxRooms) {
+                if (roomCount.compareAndSet(count, count + 1)) {
+                    return;
+                }
+                continue;
+            }
+            // The reaper keeps the count below reapTarget() as long as enough rooms are idle; this
+            // only runs if it fell behind or every room is in use. It frees the one slot it needs:
+            // a policy may pick more (idle-ttl returns every expired room), the reaper takes those
+            log.warn("Room limit reached ({}), evicting inline", maxRooms);
+            boolean evicted = false;
+            for (RoomEvictionPolicy.RoomUsage victim : evictionPolicy.select(usage(), 1, System.nanoTime())) {
+                if (evictRoom(victim.room())) {
+                    evicted = true;
+                    break;
+                }
+            }
+            if (!evicted) {
+                Thread.yield(); // Another caller evicted the same room, or holds a slot it has not filled yet
             }
-            
-            Room newRoom = new Room(roomCode);
-            roomsByCode.put(roomCode, newRoom);
-            roomsByTimestamp.put(newRoom.getMeetingStartSec(), newRoom);
-            log.info("Created room: {} (total: {})", roomCode, roomsByCode.size());
-            
-            return newRoom;
         }
     }
     
-    private void removeOldestRoom() {
-        // Must be called within synchronized block
-        // Get the first (oldest) entry from the TreeMap
-        Map.Entry<Long, Room> oldestEntry = roomsByTimestamp.firstEntry();
-        
-        if (oldestEntry != null) {
-            Room oldestRoom = oldestEntry.getValue();
-            String oldestRoomCode = oldestRoom.getRoomCode();
-            Date creationTime = new Date(oldestEntry.getKey());
-            List<String> activeSessions = getSessionsForRoom(oldestRoomCode);
-            
-            log.warn("REMOVING OLDEST ROOM: {} created at {} with {} active sessions", 
-                oldestRoomCode, creationTime, activeSessions.size());
-            
-            if (!activeSessions.isEmpty()) {
-                log.error("WARNING: Removing room {} with {} ACTIVE sessions! Sessions: {}", 
-                    oldestRoomCode, activeSessions.size(), activeSessions);
+    /**
+     * Evicts up to a batch of rooms chosen by the eviction policy, aiming for reapTarget() rooms,
+     * and returns how many were evicted. Only rooms idle for at least reapMinIdleMinutes (or the
+     * idle TTL, if that is shorter) go, so the reaper never ends a running meeting while the
+     * repository is below its limit; rooms that became active since they were chosen are kept too.
+     */
+    public int reap() {
+        long now = System.nanoTime();
+        long minIdleNanos = Duration.ofMinutes(Math.min(reapMinIdleMinutes, idleTtlMinutes)).toNanos();
+        List<RoomEvictionPolicy.RoomUsage> victims =
+                evictionPolicy.select(usage(), roomCount.get() - reapTarget(), now);
+        int evicted = 0;
+        for (RoomEvictionPolicy.RoomUsage victim : victims) {
+            if (evicted >= REAP_BATCH) {
+                break;
+            }
+            if (victim.idleNanos(now) >= minIdleNanos
+                    && victim.room().getLastActivityNanos() == victim.lastActivityNanos() && evictRoom(victim.room())) {
+                evicted++;
             }
-            
-            // Count sessions to be cleaned up
-            long sessionsToCleanup = sessionToRoomCode.entrySet().stream()
-                .filter(entry -> oldestRoomCode.equals(entry.getValue()))
-                .count();
-            
-            // Remove from both maps
-            roomsByCode.remove(oldestRoomCode);
-            roomsByTimestamp.remove(oldestEntry.getKey());
-            
-            // Clean up session tracking for the removed room
-            sessionToRoomCode.entrySet().removeIf(entry -> 
-                oldestRoomCode.equals(entry.getValue())
-            );
-            
-            log.warn("Removed oldest room: {}, cleaned up {} session mappings, remaining rooms: {}", 
-                oldestRoomCode, sessionsToCleanup, roomsByCode.size());
-        } else {
-            log.warn("Attempted to remove oldest room but no rooms exist in timestamp map");
         }
+        return evicted;
+    }
+
+    // Leaves a tenth of the limit free, as far as idle rooms allow, so new rooms rarely find the repository full
+    private int reapTarget() {
+        return maxRooms - Math.max(1, maxRooms / 10);
+    }
+
+    private List<RoomEvictionPolicy.RoomUsage> usage() {
+        List<RoomEvictionPolicy.RoomUsage> usage = new ArrayList<>(roomsByCode.size());
+        roomsByCode.values().forEach(room -> usage.add(new RoomEvictionPolicy.RoomUsage(room,
+                room.getLastActivityNanos(), sessionsByRoomCode.getOrDefault(room.getRoomCode(), Set.of()).size())));
+        return usage;
+    }
+
+    /**
+     * Removes the room unless it is already gone; only one concurrent caller succeeds.
+     */
+    private boolean evictRoom(Room room) {
+        String roomCode = room.getRoomCode();
+        if (!roomsByCode.remove(roomCode, room)) {
+            return false;
+        }
+        roomCount.decrementAndGet();
+        room.markRemoved();
+        releaseCode(room);
+        List<String> activeSessions = getSessionsForRoom(roomCode);
+        long idleSec = Duration.ofNanos(System.nanoTime() - room.getLastActivityNanos()).toSeconds();
+
+        log.warn("EVICTING ROOM: {} idle for {}s with {} active sessions",
+            roomCode, idleSec, activeSessions.size());
+
+        if (!activeSessions.isEmpty()) {
+            log.error("WARNING: Evicting room {} with {} ACTIVE sessions! Sessions: {}",
+                roomCode, activeSessions.size(), activeSessions);
+        }
+
+        // Clean up session tracking for the removed room
+        int sessionsToCleanup = untrackRoom(roomCode);
+
+        fireRoomRemoved(roomCode);
+
+        log.warn("Evicted room: {}, cleaned up {} session mappings, remaining rooms: {}",
+            roomCode, sessionsToCleanup, roomCount.get());
+        return true;
     }
 
     public boolean exists(String roomCode) {
-        return roomsByCode.containsKey(roomCode);
+        return lookup(roomCode) != null;
     }
 
     public Optional<Room> getBySessionId(String sessionId) {
@@ -110,7 +271,7 @@ public class RoomRepository {
             Room room = roomsByCode.get(roomCode);
             if (room == null) {
                 log.warn("Orphaned session mapping: {} -> {}", sessionId, roomCode);
-                sessionToRoomCode.remove(sessionId);
+                untrackSession(sessionId, roomCode);
             }
             return Optional.ofNullable(room);
         }
@@ -118,38 +279,76 @@ public class RoomRepository {
     }
 
     public void trackSession(String sessionId, String roomCode) {
-        String previousRoomCode = sessionToRoomCode.put(sessionId, roomCode);
-        if (previousRoomCode != null && !previousRoomCode.equals(roomCode)) {
-            log.warn("Session remapped: {} from {} to {}", sessionId, previousRoomCode, roomCode);
-        }
+        sessionToRoomCode.compute(sessionId, (sid, previousRoomCode) -> {
+            if (previousRoomCode != null && !previousRoomCode.equals(roomCode)) {
+                log.warn("Session remapped: {} from {} to {}", sessionId, previousRoomCode, roomCode);
+                removeFromRoomIndex(previousRoomCode, sessionId);
+            }
+            // Added inside compute, so a concurrent removeFromRoomIndex cannot drop the set in between
+            sessionsByRoomCode.compute(roomCode, (code, sessions) -> {
+                Set<String> roomSessions = sessions != null ? sessions : ConcurrentHashMap.newKeySet();
+                roomSessions.add(sessionId);
+                return roomSessions;
+            });
+            return roomCode;
+        });
         if (!roomsByCode.containsKey(roomCode)) {
             log.error("Tracking session for non-existent room: {}", roomCode);
         }
     }
 
     public void untrackSession(String sessionId) {
-        sessionToRoomCode.remove(sessionId);
+        sessionToRoomCode.computeIfPresent(sessionId, (sid, roomCode) -> {
+            removeFromRoomIndex(roomCode, sessionId);
+            return null;
+        });
+    }
+
+    // Leaves the session alone if it moved on to another room in the meantime
+    private void untrackSession(String sessionId, String roomCode) {
+        sessionToRoomCode.computeIfPresent(sessionId, (sid, currentRoomCode) -> {
+            if (!currentRoomCode.equals(roomCode)) {
+                return currentRoomCode;
+            }
+            removeFromRoomIndex(roomCode, sessionId);
+            return null;
+        });
+    }
+
+    private void removeFromRoomIndex(String roomCode, String sessionId) {
+        sessionsByRoomCode.computeIfPresent(roomCode, (code, sessions) -> {
+            sessions.remove(sessionId);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    /**
+     * Drops the session mappings of a removed room and returns how many there were.
+     */
+    private int untrackRoom(String roomCode) {
+        List<String> sessions = getSessionsForRoom(roomCode);
+        sessions.forEach(sessionId -> untrackSession(sessionId, roomCode));
+        return sessions.size();
     }
     
     public void destroyRoom(String roomCode) {
-        synchronized (roomCreationLock) {
-            Room room = roomsByCode.remove(roomCode);
-            if (room != null) {
-                List<String> activeSessions = getSessionsForRoom(roomCode);
-                if (!activeSessions.isEmpty()) {
-                    log.warn("Destroying room {} with {} active sessions", roomCode, activeSessions.size());
-                }
-                roomsByTimestamp.remove(room.getMeetingStartSec());
-                sessionToRoomCode.entrySet().removeIf(entry -> roomCode.equals(entry.getValue()));
-                log.info("Destroyed room: {} (remaining: {})", roomCode, roomsByCode.size());
+        Room room = roomsByCode.remove(roomCode);
+        if (room != null) {
+            roomCount.decrementAndGet();
+            room.markRemoved();
+            releaseCode(room);
+            List<String> activeSessions = getSessionsForRoom(roomCode);
+            if (!activeSessions.isEmpty()) {
+                log.warn("Destroying room {} with {} active sessions", roomCode, activeSessions.size());
             }
+            untrackRoom(roomCode);
+            fireRoomRemoved(roomCode);
+            log.info("Destroyed room: {} (remaining: {})", roomCode, roomCount.get());
         }
     }
     
     public List<String> getSessionsForRoom(String roomCode) {
-        return sessionToRoomCode.entrySet().stream()
-                .filter(entry -> roomCode.equals(entry.getValue()))
-                .map(Map.Entry::getKey)
-                .toList();
+        Set<String> sessions = sessionsByRoomCode.get(roomCode);
+        return sessions != null ? List.copyOf(sessions) : List.of();
     }
 }
\ No newline at end of file
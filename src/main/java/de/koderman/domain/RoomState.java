@@ -0,0 +1,92 @@
+package de.koderman.domain;
+
+import java.util.List;
+
+/**
+ * Immutable view of everything a Room exposes to readers. Room swaps in a new instance
+ * on every change, so readers take one volatile read and never wait for a writer.
+ * All collections held here are unmodifiable; live single-choice vote counts are the
+ * one part read from shared counters, see {@link Poll}.
+ */
+record RoomState(
+        List<Participant> queue,
+        List<RoomMember> members,
+        Current current,
+        int defaultLimitSec, // per-speaker
+        String chairSessionId,
+        RoomConfig config,
+        int currentAgendaIndex,
+        Poll poll, // question, type, options and tallies of the active or ended poll
+        String pollStatus, // "ACTIVE", "ENDED", "CLOSED", null
+        PollResults lastPollResults) {
+
+    static final RoomState INITIAL = new RoomState(List.of(), List.of(), null, 180, null,
+            new RoomConfig(null, null, null, null, null, null), 0, null, null, null);
+
+    /**
+     * Single-choice polls count votes in liveVotes, outside the room's mailbox; tally then only
+     * supplies the options. Other polls, and every poll once ended, keep their counts in tally.
+     */
+    record Poll(String question, String type, PollTally tally, SingleChoiceVotes liveVotes, List<String> options,
+            Integer votesPerParticipant) {
+
+        Poll withTally(PollTally tally) {
+            return new Poll(question, type, tally, liveVotes, options, votesPerParticipant);
+        }
+
+        PollTally currentTally() {
+            return liveVotes != null ? tally.withCounts(liveVotes.counts()) : tally;
+        }
+
+        /**
+         * Stops live voting and returns the poll holding its final counts.
+         */
+        Poll closed() {
+            if (liveVotes == null) {
+                return this;
+            }
+            liveVotes.close();
+            return new Poll(question, type, currentTally(), null, options, votesPerParticipant);
+        }
+    }
+
+    RoomState withQueue(List<Participant> queue) {
+        return new RoomState(queue, members, current, defaultLimitSec, chairSessionId, config, currentAgendaIndex,
+                poll, pollStatus, lastPollResults);
+    }
+
+    RoomState withMembers(List<RoomMember> members) {
+        return new RoomState(queue, members, current, defaultLimitSec, chairSessionId, config, currentAgendaIndex,
+                poll, pollStatus, lastPollResults);
+    }
+
+    RoomState withCurrent(Current current) {
+        return new RoomState(queue, members, current, defaultLimitSec, chairSessionId, config, currentAgendaIndex,
+                poll, pollStatus, lastPollResults);
+    }
+
+    RoomState withDefaultLimitSec(int defaultLimitSec) {
+        return new RoomState(queue, members, current, defaultLimitSec, chairSessionId, config, currentAgendaIndex,
+                poll, pollStatus, lastPollResults);
+    }
+
+    RoomState withChairSessionId(String chairSessionId) {
+        return new RoomState(queue, members, current, defaultLimitSec, chairSessionId, config, currentAgendaIndex,
+                poll, pollStatus, lastPollResults);
+    }
+
+    RoomState withConfig(RoomConfig config, int currentAgendaIndex) {
+        return new RoomState(queue, members, current, defaultLimitSec, chairSessionId, config, currentAgendaIndex,
+                poll, pollStatus, lastPollResults);
+    }
+
+    RoomState withPoll(Poll poll, String pollStatus) {
+        return new RoomState(queue, members, current, defaultLimitSec, chairSessionId, config, currentAgendaIndex,
+                poll, pollStatus, lastPollResults);
+    }
+
+    RoomState withLastPollResults(PollResults lastPollResults) {
+        return new RoomState(queue, members, current, defaultLimitSec, chairSessionId, config, currentAgendaIndex,
+                poll, pollStatus, lastPollResults);
+    }
+}
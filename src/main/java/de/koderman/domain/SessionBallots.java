@@ -0,0 +1,42 @@
+package de.koderman.domain;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-session votes of a DOT_VOTING or MULTISELECT_MULTIPLE poll, owned by the room's writer.
+ * Each session holds one int array with its votes per option ordinal and its running total in
+ * the last slot, so casting a vote and checking votesPerParticipant are both O(1).
+ * A multiple selection is the same array with counts of 0 or 1.
+ */
+final class SessionBallots {
+    private final Map<String, int[]> ballots = new HashMap<>();
+    private int options;
+
+    /**
+     * Drops all ballots and sizes new ones for a poll with the given number of options.
+     */
+    void reset(int options) {
+        ballots.clear();
+        this.options = options;
+    }
+
+    int count(String sessionId, int ordinal) {
+        int[] ballot = ballots.get(sessionId);
+        return ballot != null ? ballot[ordinal] : 0;
+    }
+
+    int total(String sessionId) {
+        int[] ballot = ballots.get(sessionId);
+        return ballot != null ? ballot[options] : 0;
+    }
+
+    /**
+     * Changes the session's votes for one option by delta; callers check the bounds first.
+     */
+    void adjust(String sessionId, int ordinal, int delta) {
+        int[] ballot = ballots.computeIfAbsent(sessionId, k -> new int[options + 1]);
+        ballot[ordinal] += delta;
+        ballot[options] += delta;
+    }
+}
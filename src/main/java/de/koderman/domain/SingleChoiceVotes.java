@@ -0,0 +1,64 @@
+package de.koderman.domain;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counts of a single-choice poll. Voters update them in parallel without going through
+ * the room's mailbox: counts are striped LongAdders, and each session's current choice sits
+ * in a concurrent map so changing a vote moves it atomically per session.
+ * <p>
+ * {@link #close()} stops voting and waits for votes already being applied, after which the
+ * counts are final.
+ */
+final class SingleChoiceVotes {
+    private final LongAdder[] counts;
+    private final ConcurrentHashMap<String, Integer> sessionVotes = new ConcurrentHashMap<>(); // session -> ordinal
+    private final LongAdder inFlight = new LongAdder();
+    private volatile boolean closed;
+
+    SingleChoiceVotes(int options) {
+        counts = new LongAdder[options];
+        for (int i = 0; i < options; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the session's choice, replacing its previous one. Returns false once closed.
+     */
+    boolean vote(String sessionId, int ordinal) {
+        inFlight.increment();
+        try {
+            if (closed) {
+                return false;
+            }
+            sessionVotes.compute(sessionId, (sid, previous) -> {
+                if (previous != null) {
+                    counts[previous].decrement();
+                }
+                counts[ordinal].increment();
+                return ordinal;
+            });
+            return true;
+        } finally {
+            inFlight.decrement();
+        }
+    }
+
+    void close() {
+        closed = true;
+        // A vote either sees closed, or its in-flight mark is seen here
+        while (inFlight.sum() != 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    int[] counts() {
+        int[] snapshot = new int[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            snapshot[i] = counts[i].intValue();
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,167 @@
+package de.koderman.domain;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * Writer-side list whose {@link #view()}s are immutable snapshots sharing its backing array.
+ * A slot is never written again once a view may cover it, so appending and removing from the
+ * front are O(1) including publication. Changes in the middle copy the live range once.
+ * Not thread-safe; owned by a Room's writer.
+ */
+final class SnapshotList<E> {
+    private static final int MIN_CAPACITY = 16;
+
+    private Object[] slots = new Object[MIN_CAPACITY];
+    private int head;
+    private int tail;
+
+    int size() {
+        return tail - head;
+    }
+
+    boolean isEmpty() {
+        return head == tail;
+    }
+
+    void add(E element) {
+        if (tail == slots.length) {
+            copyLiveRange();
+        }
+        slots[tail++] = element;
+    }
+
+    /**
+     * Removes and returns the first element, or null if the list is empty.
+     */
+    @SuppressWarnings("unchecked")
+    E pollFirst() {
+        return isEmpty() ? null : (E) slots[head++]; // Left in place, older views may still read it
+    }
+
+    /**
+     * Puts replacement in the place of this exact instance and returns whether it was found.
+     * Finds it while copying the live range, so a replacement takes one pass, not two.
+     */
+    boolean replace(E existing, E replacement) {
+        int size = size();
+        Object[] copy = new Object[capacityFor(size)];
+        boolean found = false;
+        for (int i = 0; i < size; i++) {
+            Object element = slots[head + i];
+            if (!found && element == existing) {
+                element = replacement;
+                found = true;
+            }
+            copy[i] = element;
+        }
+        if (found) {
+            slots = copy;
+            head = 0;
+            tail = size;
+        }
+        return found;
+    }
+
+    /**
+     * Removes this exact instance and returns the position it had, or -1. Like replace, finds
+     * it while copying the live range.
+     */
+    int remove(E element) {
+        int size = size();
+        Object[] copy = new Object[capacityFor(size)];
+        int position = -1;
+        for (int i = 0; i < size; i++) {
+            Object current = slots[head + i];
+            if (position < 0 && current == element) {
+                position = i;
+            } else {
+                copy[position < 0 ? i : i - 1] = current;
+            }
+        }
+        if (position >= 0) {
+            slots = copy;
+            head = 0;
+            tail = size - 1;
+        }
+        return position;
+    }
+
+    /**
+     * Removes all matching elements with a single copy and returns how many there were.
+     */
+    @SuppressWarnings("unchecked")
+    int removeIf(Predicate<? super E> filter) {
+        Object[] copy = null;
+        int kept = 0;
+        for (int i = head; i < tail; i++) {
+            E element = (E) slots[i];
+            if (filter.test(element)) {
+                if (copy == null) {
+                    copy = new Object[capacityFor(size())];
+                    System.arraycopy(slots, head, copy, 0, kept);
+                }
+            } else {
+                if (copy != null) {
+                    copy[kept] = element;
+                }
+                kept++;
+            }
+        }
+        if (copy == null) {
+            return 0;
+        }
+        int removed = size() - kept;
+        slots = copy;
+        head = 0;
+        tail = kept;
+        return removed;
+    }
+
+    /**
+     * Returns an immutable, random-access view of the list as it is now.
+     */
+    List<E> view() {
+        return isEmpty() ? List.of() : new View<>(slots, head, tail);
+    }
+
+    private void copyLiveRange() {
+        int size = size();
+        Object[] copy = new Object[capacityFor(size)];
+        System.arraycopy(slots, head, copy, 0, size);
+        slots = copy;
+        head = 0;
+        tail = size;
+    }
+
+    private static int capacityFor(int size) {
+        return Math.max(MIN_CAPACITY, size * 2);
+    }
+
+    private static final class View<E> extends AbstractList<E> implements RandomAccess {
+        private final Object[] slots;
+        private final int from;
+        private final int to;
+
+        private View(Object[] slots, int from, int to) {
+            this.slots = slots;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            Objects.checkIndex(index, to - from);
+            return (E) slots[from + index];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package de.koderman.domain;
+
+import java.util.*;
+
+/**
+ * The speaker queue of a Room, owned by the room's writer. Participants are indexed by id and
+ * by case-folded name, so duplicate checks and lookups are O(1). Enqueue and dequeue are O(1)
+ * including publication, see {@link SnapshotList}.
+ * <p>
+ * Withdrawing or renaming someone in the middle is O(n): the published snapshot must not
+ * change, so the live range is copied once, and the participant is found during that copy.
+ * An id-to-position index would not save the copy and would need shifting on every removal.
+ * Queues stay at tens of entries even in large rooms, so the copy costs less than the
+ * broadcast that follows it.
+ */
+final class SpeakerQueue {
+    private final SnapshotList<Participant> participants = new SnapshotList<>();
+    private long nextSeq;
+    private final Map<String, Entry> byId = new HashMap<>();
+    private final Map<String, List<Entry>> byName = new HashMap<>(); // folded name -> entries, usually one
+
+    private record Entry(Participant participant, long seq) {}
+
+    int size() {
+        return participants.size();
+    }
+
+    boolean isEmpty() {
+        return participants.isEmpty();
+    }
+
+    Participant findById(String id) {
+        Entry entry = byId.get(id);
+        return entry != null ? entry.participant() : null;
+    }
+
+    boolean containsName(String name) {
+        return byName.containsKey(Names.fold(name));
+    }
+
+    void add(Participant participant) {
+        participants.add(participant);
+        index(new Entry(participant, nextSeq++));
+    }
+
+    /**
+     * Replaces the participant with the same id, keeping its place in the queue.
+     */
+    void replace(Participant participant) {
+        Entry existing = byId.get(participant.id());
+        participants.replace(existing.participant(), participant);
+        unindex(existing);
+        index(new Entry(participant, existing.seq()));
+    }
+
+    /**
+     * Removes and returns the participant at the front of the queue, or null if it is empty.
+     */
+    Participant poll() {
+        Participant first = participants.pollFirst();
+        if (first != null) {
+            unindex(byId.get(first.id()));
+        }
+        return first;
+    }
+
+    /**
+     * Removes the first participant in queue order whose name equals the given name ignoring case.
+     * Returns the position it had, or -1 if there was none.
+     */
+    int withdraw(String name) {
+        List<Entry> entries = byName.get(Names.fold(name));
+        if (entries == null) {
+            return -1;
+        }
+        Entry first = Collections.min(entries, Comparator.comparingLong(Entry::seq));
+        int position = participants.remove(first.participant());
+        unindex(first);
+        return position;
+    }
+
+    List<Participant> view() {
+        return participants.view();
+    }
+
+    private void index(Entry entry) {
+        byId.put(entry.participant().id(), entry);
+        byName.computeIfAbsent(Names.fold(entry.participant().name()), k -> new ArrayList<>(1)).add(entry);
+    }
+
+    private void unindex(Entry entry) {
+        byId.remove(entry.participant().id());
+        String key = Names.fold(entry.participant().name());
+        List<Entry> entries = byName.get(key);
+        entries.remove(entry);
+        if (entries.isEmpty()) {
+            byName.remove(key);
+        }
+    }
+}
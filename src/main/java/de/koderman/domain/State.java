@@ -2,4 +2,4 @@ package de.koderman.domain;
 
 import java.util.List;
 
-public record State(List<Participant> queue, Current current, long meetingStartSec, int defaultLimitSec, String roomCode, boolean chairOccupied, PollState pollState, RoomConfig roomConfig, List<RoomMember> members, int currentAgendaIndex) {}
\ No newline at end of file
+public record State(List<Participant> queue, Current current, long meetingStartSec, int defaultLimitSec, String roomCode, boolean chairOccupied, PollState pollState, RoomConfig roomConfig, List<RoomMember> members, int currentAgendaIndex, long version) {}
\ No newline at end of file
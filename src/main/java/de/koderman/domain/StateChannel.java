@@ -0,0 +1,49 @@
+package de.koderman.domain;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The parts of a room State that are published on their own topic,
+ * /topic/room/{code}/{channel}, when broadcasting in "channels" mode.
+ * Every State field belongs to exactly one channel except the room's identity
+ * (roomCode, meetingStartSec) and version.
+ */
+public enum StateChannel {
+    QUEUE("queue", state -> fields("queue", state.queue())),
+    TIMER("timer", state -> fields("current", state.current(), "defaultLimitSec", state.defaultLimitSec())),
+    POLL("poll", state -> fields("pollState", state.pollState())),
+    MEMBERS("members", state -> fields("members", state.members(), "chairOccupied", state.chairOccupied())),
+    CONFIG("config", state -> fields("roomConfig", state.roomConfig(), "currentAgendaIndex", state.currentAgendaIndex()));
+
+    private final String topic;
+    private final Function<State, Map<String, Object>> fields;
+
+    StateChannel(String topic, Function<State, Map<String, Object>> fields) {
+        this.topic = topic;
+        this.fields = fields;
+    }
+
+    /**
+     * Last segment of the channel's destination.
+     */
+    public String topic() {
+        return topic;
+    }
+
+    /**
+     * The State fields this channel carries, by their name in State; values may be null.
+     */
+    public Map<String, Object> fieldsOf(State state) {
+        return fields.apply(state);
+    }
+
+    private static Map<String, Object> fields(Object... namesAndValues) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            fields.put((String) namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,139 @@
+package de.koderman.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.*;
+
+/**
+ * Patch turning the State at baseVersion into the State at version.
+ * Fields named in "changed" replace the client's copy wholesale (a null value clears it),
+ * the op lists and tally increments are applied on top of the base.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record StateDelta(
+    String roomCode,
+    long baseVersion,
+    long version,
+    List<String> changed,
+    List<Participant> queue,
+    Current current,
+    Integer defaultLimitSec,
+    Boolean chairOccupied,
+    PollState pollState,
+    RoomConfig roomConfig,
+    List<RoomMember> members,
+    Integer currentAgendaIndex,
+    List<ListOp<Participant>> queueOps,
+    List<ListOp<RoomMember>> memberOps,
+    Map<String, Integer> tallyIncrements // vote option -> change in count, only while the poll itself is unchanged
+) {
+
+    public static StateDelta between(State base, State next) {
+        List<String> changed = new ArrayList<>();
+
+        List<Participant> queue = null;
+        List<ListOp<Participant>> queueOps = null;
+        if (!base.queue().equals(next.queue())) {
+            List<ListOp<Participant>> ops = ListOp.diff(base.queue(), next.queue());
+            if (ops.size() > next.queue().size()) {
+                changed.add("queue");
+                queue = next.queue();
+            } else {
+                queueOps = ops;
+            }
+        }
+
+        List<RoomMember> members = null;
+        List<ListOp<RoomMember>> memberOps = null;
+        if (!base.members().equals(next.members())) {
+            List<ListOp<RoomMember>> ops = ListOp.diff(base.members(), next.members());
+            if (ops.size() > next.members().size()) {
+                changed.add("members");
+                members = next.members();
+            } else {
+                memberOps = ops;
+            }
+        }
+
+        PollState pollState = null;
+        Map<String, Integer> tallyIncrements = null;
+        if (!Objects.equals(base.pollState(), next.pollState())) {
+            tallyIncrements = tallyIncrements(base.pollState(), next.pollState());
+            if (tallyIncrements == null) {
+                changed.add("pollState");
+                pollState = next.pollState();
+            }
+        }
+
+        Current current = null;
+        if (!Objects.equals(base.current(), next.current())) {
+            changed.add("current");
+            current = next.current();
+        }
+        Integer defaultLimitSec = null;
+        if (base.defaultLimitSec() != next.defaultLimitSec()) {
+            changed.add("defaultLimitSec");
+            defaultLimitSec = next.defaultLimitSec();
+        }
+        Boolean chairOccupied = null;
+        if (base.chairOccupied() != next.chairOccupied()) {
+            changed.add("chairOccupied");
+            chairOccupied = next.chairOccupied();
+        }
+        RoomConfig roomConfig = null;
+        if (!Objects.equals(base.roomConfig(), next.roomConfig())) {
+            changed.add("roomConfig");
+            roomConfig = next.roomConfig();
+        }
+        Integer currentAgendaIndex = null;
+        if (base.currentAgendaIndex() != next.currentAgendaIndex()) {
+            changed.add("currentAgendaIndex");
+            currentAgendaIndex = next.currentAgendaIndex();
+        }
+
+        return new StateDelta(next.roomCode(), base.version(), next.version(), changed,
+                queue, current, defaultLimitSec, chairOccupied, pollState, roomConfig, members, currentAgendaIndex,
+                queueOps, memberOps, tallyIncrements);
+    }
+
+    // Returns null when more than the counts changed, so the caller ships the whole poll instead
+    private static Map<String, Integer> tallyIncrements(PollState base, PollState next) {
+        if (base == null || next == null
+                || !Objects.equals(base.question(), next.question())
+                || !Objects.equals(base.pollType(), next.pollType())
+                || !Objects.equals(base.status(), next.status())
+                || !Objects.equals(base.lastResults(), next.lastResults())
+                || !Objects.equals(base.options(), next.options())
+                || !Objects.equals(base.votesPerParticipant(), next.votesPerParticipant())
+                || !base.results().keySet().equals(next.results().keySet())) {
+            return null;
+        }
+        Map<String, Integer> increments = new HashMap<>();
+        next.results().forEach((option, count) -> {
+            int increment = count - base.results().get(option);
+            if (increment != 0) {
+                increments.put(option, increment);
+            }
+        });
+        return increments;
+    }
+
+    /**
+     * True when the patch touches nothing but the member list.
+     */
+    @JsonIgnore
+    public boolean isMembersOnly() {
+        return (changed.isEmpty() || changed.equals(List.of("members")))
+                && queueOps == null
+                && tallyIncrements == null;
+    }
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return changed.isEmpty()
+                && (queueOps == null || queueOps.isEmpty())
+                && (memberOps == null || memberOps.isEmpty())
+                && (tallyIncrements == null || tallyIncrements.isEmpty());
+    }
+}
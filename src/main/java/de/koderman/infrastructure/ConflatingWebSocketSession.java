@@ -0,0 +1,312 @@
+package de.koderman.infrastructure;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Outbound queue of a WebSocket session that holds at most one pending state frame per room
+ * channel. sendMessage() only queues; one virtual thread at a time writes the queue out, so
+ * callers never block on a slow socket and the session's writes never overlap.
+ * <p>
+ * A queued MESSAGE frame on a destination carrying a whole State or channel (state, queue, timer,
+ * poll, members, config, and the /user/queue/state snapshot) is replaced in place when a newer
+ * one for the same subscription arrives, so a client that cannot keep up skips to the latest
+ * state instead of buffering every intermediate one. Everything else, deltas included, is sent
+ * in order. The writer puts consecutive MESSAGE frames into one WebSocket message.
+ * <p>
+ * If the backlog still exceeds bufferSizeLimit, or one write blocks for longer than
+ * sendTimeLimitMs, the session is closed, like Spring's ConcurrentWebSocketSessionDecorator does.
+ */
+@Slf4j
+public class ConflatingWebSocketSession extends WebSocketSessionDecorator {
+    private static final String[] CONFLATED_CHANNELS = {"/state", "/queue", "/timer", "/poll", "/members", "/config"};
+    private static final int MAX_BATCH_BYTES = 64 * 1024; // A single frame may still exceed this
+    private static final Executor WRITERS = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final int sendTimeLimitMs;
+    private final int bufferSizeLimit;
+    private final WebSocketSessionRegistry.OutboundStats stats;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ReentrantLock writeLock = new ReentrantLock(); // Held for every write and the close
+
+    // Guarded by this
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private final Map<String, Pending> latestByKey = new HashMap<>(); // Conflatable frames still queued
+    private long bufferedBytes;
+
+    private volatile long sendStartMillis;
+    private volatile boolean closing;
+
+    public ConflatingWebSocketSession(WebSocketSession delegate, int sendTimeLimitMs, int bufferSizeLimit,
+            WebSocketSessionRegistry.OutboundStats stats) {
+        super(delegate);
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.stats = stats;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        if (closing) {
+            return;
+        }
+        if (enqueue(message)) {
+            terminate("buffer size");
+            return;
+        }
+        if (sendTimedOut()) {
+            terminate("send time");
+            return;
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            WRITERS.execute(this::writeQueued);
+        }
+    }
+
+    // Returns whether the backlog is now over the limit
+    private synchronized boolean enqueue(WebSocketMessage<?> message) {
+        String key = conflationKey(message);
+        int bytes = payloadBytes(message);
+        Pending queued = key != null ? latestByKey.get(key) : null;
+        if (queued != null) {
+            bufferedBytes += bytes - queued.bytes;
+            queued.message = message; // Keeps its place in line
+            queued.bytes = bytes;
+            stats.conflated();
+        } else {
+            Pending entry = new Pending(key, message, bytes);
+            pending.add(entry);
+            if (key != null) {
+                latestByKey.put(key, entry);
+            }
+            bufferedBytes += bytes;
+        }
+        return bufferedBytes > bufferSizeLimit;
+    }
+
+    /**
+     * Takes the next message to write: a single non-MESSAGE frame, or as many queued MESSAGE
+     * frames as fit into one batch.
+     */
+    private synchronized Batch nextBatch() {
+        Pending first = take();
+        if (first == null) {
+            return null;
+        }
+        if (!isMessageFrame(first.message)) {
+            return new Batch(first.message, 1);
+        }
+        StringBuilder text = null;
+        long batchBytes = first.bytes;
+        int frames = 1;
+        while (!pending.isEmpty() && isMessageFrame(pending.peek().message)
+                && batchBytes + pending.peek().bytes <= MAX_BATCH_BYTES) {
+            if (text == null) {
+                text = new StringBuilder(((TextMessage) first.message).getPayload());
+            }
+            Pending next = take();
+            text.append(((TextMessage) next.message).getPayload());
+            batchBytes += next.bytes;
+            frames++;
+        }
+        return new Batch(text != null ? new TextMessage(text) : first.message, frames);
+    }
+
+    // Must hold this
+    private Pending take() {
+        Pending next = pending.poll();
+        if (next == null) {
+            return null;
+        }
+        if (next.key != null) {
+            latestByKey.remove(next.key);
+        }
+        bufferedBytes -= next.bytes;
+        return next;
+    }
+
+    private void writeQueued() {
+        try {
+            while (!closing && writeNext()) {
+                // Keep writing until the queue is empty
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        // A message added between the last poll and the reset above still needs a writer
+        if (!closing && hasPending() && scheduled.compareAndSet(false, true)) {
+            WRITERS.execute(this::writeQueued);
+        }
+    }
+
+    // Takes the batch under the write lock too, so close() either finds it queued or written
+    private boolean writeNext() {
+        writeLock.lock();
+        try {
+            Batch batch = closing ? null : nextBatch();
+            if (batch == null) {
+                return false;
+            }
+            sendStartMillis = System.currentTimeMillis();
+            getDelegate().sendMessage(batch.message());
+            stats.written(batch.frames());
+            return true;
+        } catch (IOException | RuntimeException ex) {
+            // Transport failed; Spring notices on its side and ends the session
+            log.debug("Write to session {} failed: {}", getId(), ex.toString());
+            return false;
+        } finally {
+            sendStartMillis = 0;
+            writeLock.unlock();
+        }
+    }
+
+    private synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    private boolean sendTimedOut() {
+        long start = sendStartMillis;
+        return start > 0 && System.currentTimeMillis() - start > sendTimeLimitMs;
+    }
+
+    private void terminate(String limit) {
+        if (closing) {
+            return;
+        }
+        closing = true;
+        stats.terminated();
+        synchronized (this) {
+            pending.clear();
+            latestByKey.clear();
+            bufferedBytes = 0;
+        }
+        log.debug("Closing session {}: outbound {} limit exceeded", getId(), limit);
+        try {
+            getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException | RuntimeException ex) {
+            log.debug("Closing session {} failed: {}", getId(), ex.toString());
+        }
+    }
+
+    /**
+     * Writes out what is still queued, e.g. the ERROR frame Spring sends right before closing,
+     * then closes the session.
+     */
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        closing = true;
+        writeLock.lock();
+        try {
+            Batch batch;
+            while (isOpen() && (batch = nextBatch()) != null) {
+                getDelegate().sendMessage(batch.message());
+                stats.written(batch.frames());
+            }
+            getDelegate().close(status);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // getPayloadLength() encodes a text payload to count its bytes; this counts without copying
+    private static int payloadBytes(WebSocketMessage<?> message) {
+        if (!(message instanceof TextMessage text)) {
+            return message.getPayloadLength();
+        }
+        String payload = text.getPayload();
+        int bytes = 0;
+        for (int i = 0; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < payload.length()
+                    && Character.isLowSurrogate(payload.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static boolean isMessageFrame(WebSocketMessage<?> message) {
+        return message instanceof TextMessage text && text.getPayload().startsWith("MESSAGE\n");
+    }
+
+    /**
+     * Returns "destination|subscription" for a single MESSAGE frame on a conflatable
+     * destination, or null for anything that has to be delivered.
+     */
+    static String conflationKey(WebSocketMessage<?> message) {
+        if (!isMessageFrame(message)) {
+            return null;
+        }
+        String frame = ((TextMessage) message).getPayload();
+        int headersEnd = frame.indexOf("\n\n");
+        // One frame only, anything written as a batch already is delivered as it is
+        if (headersEnd < 0 || frame.indexOf('\0') != frame.length() - 1) {
+            return null;
+        }
+        String destination = header(frame, "destination", headersEnd);
+        if (destination == null || !isConflatable(destination)) {
+            return null;
+        }
+        return destination + "|" + header(frame, "subscription", headersEnd);
+    }
+
+    private static boolean isConflatable(String destination) {
+        if (destination.equals("/user/queue/state")) {
+            return true;
+        }
+        if (!destination.startsWith("/topic/room/")) {
+            return false;
+        }
+        for (String channel : CONFLATED_CHANNELS) {
+            if (destination.endsWith(channel)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String header(String frame, String name, int headersEnd) {
+        String prefix = "\n" + name + ":";
+        int start = frame.indexOf(prefix);
+        if (start < 0 || start >= headersEnd) {
+            return null;
+        }
+        start += prefix.length();
+        return frame.substring(start, frame.indexOf('\n', start));
+    }
+
+    private static final class Pending {
+        private final String key;
+        private WebSocketMessage<?> message;
+        private int bytes; // UTF-8 payload length, counted once on enqueue
+
+        private Pending(String key, WebSocketMessage<?> message, int bytes) {
+            this.key = key;
+            this.message = message;
+            this.bytes = bytes;
+        }
+    }
+
+    private record Batch(WebSocketMessage<?> message, int frames) {}
+}
@@ -1,13 +1,46 @@
 package de.koderman.infrastructure;
 
+import de.koderman.config.RoomLaneExecutor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
 class Health {
+    private final ObjectProvider<RoomTopicBroker> roomTopicBroker;
+    private final ObjectProvider<RoomLaneExecutor> roomLanes;
+    private final WebSocketSessionRegistry sessions;
+
+    Health(ObjectProvider<RoomTopicBroker> roomTopicBroker, ObjectProvider<RoomLaneExecutor> roomLanes,
+            WebSocketSessionRegistry sessions) {
+        this.roomTopicBroker = roomTopicBroker;
+        this.roomLanes = roomLanes;
+        this.sessions = sessions;
+    }
+
     @GetMapping("/healthz")
     public Map<String, String> ok() { 
         return Map.of("status", "ok"); 
     }
-}
\ No newline at end of file
+
+    // Outbound counters of all sessions, plus those of the room broker when it runs
+    @GetMapping("/healthz/broker")
+    public Map<String, Object> broker() {
+        Map<String, Object> metrics = new LinkedHashMap<>(sessions.metrics());
+        RoomTopicBroker broker = roomTopicBroker.getIfAvailable();
+        metrics.put("broker", broker != null ? "room" : "simple");
+        if (broker != null) {
+            metrics.putAll(broker.metrics());
+        }
+        return metrics;
+    }
+
+    // Queue waits per priority of the inbound room lanes, or just that they are off
+    @GetMapping("/healthz/inbound")
+    public Map<String, ?> inbound() {
+        RoomLaneExecutor lanes = roomLanes.getIfAvailable();
+        return lanes != null ? lanes.metrics() : Map.of("lanes", 0);
+    }
+}
@@ -2,6 +2,7 @@ package de.koderman.infrastructure;
 
 import de.koderman.domain.*;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
@@ -25,7 +26,10 @@ import java.util.*;
 public class MeetingController {
     private final SimpMessagingTemplate broker;
     private final RoomRepository roomRepository;
-    private final Random random = new Random();
+    private final RoomBroadcaster broadcaster;
+
+    @Value("${app.room.command-mode:direct}")
+    private String commandMode = "direct"; // Default for manual instantiation in tests
     
     @MessageExceptionHandler
     public void handleRoomNotFound(RoomNotFoundException ex) {
@@ -70,35 +74,17 @@ public class MeetingController {
         return "redirect:/participant.html?room=" + normalizedRoomCode;
     }
 
-    private String generateRoomCode() {
-        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ123456789"; // Removed "0" to avoid confusion with "O"
-        StringBuilder code = new StringBuilder();
-        for (int i = 0; i < 4; i++) {
-            code.append(chars.charAt(random.nextInt(chars.length())));
-        }
-        return code.toString();
-    }
-
     private String normalizeRoomCode(String roomCode) {
         if (roomCode == null) return null;
         // Convert "0" to "O" to avoid confusion when users enter room codes
         return roomCode.toUpperCase().replace("0", "O");
     }
 
-    private String createUniqueRoomCode() {
-        String code;
-        do {
-            code = generateRoomCode();
-        } while (roomRepository.exists(code));
-        return code;
-    }
-
     @PostMapping("/api/rooms")
     @ResponseBody
     public RoomInfo createRoom() {
-        String roomCode = createUniqueRoomCode();
-        roomRepository.createRoom(roomCode);
-        return new RoomInfo(roomCode, true);
+        Room room = roomRepository.createRoom();
+        return new RoomInfo(room.getRoomCode(), true);
     }
 
     @GetMapping("/api/rooms/{roomCode}")
@@ -165,191 +151,295 @@ public class MeetingController {
         return Map.of("version", "1.0", "data", deliverables);
     }
 
-    private void broadcast(String roomCode) {
-        try {
-            Room room = roomRepository.getByCodeOrThrow(roomCode);
-            State s = room.snapshot();
-            broker.convertAndSend("/topic/room/" + roomCode + "/state", s);
-        } catch (RoomNotFoundException ex) {
+    // Participant traffic: coalesced with other changes to the room
+    private void broadcast(Room room) {
+        broadcast(room, false);
+    }
+
+    // Chair commands: sent right away so the room reacts without the coalescing delay
+    private void broadcastNow(Room room) {
+        broadcast(room, true);
+    }
+
+    // Joins and leaves: the rest of the room only needs the member edits
+    private void broadcastMembers(Room room) {
+        if (room.isRemoved()) {
+            broadcast(room);
+            return;
+        }
+        broadcaster.publishMembers(room);
+    }
+
+    private void broadcast(Room room, boolean immediate) {
+        if (room.isRemoved()) {
             // Room was destroyed during the operation, send error to clients
             RoomError error = new RoomError(
                 "Room no longer exists",
-                roomCode,
+                room.getRoomCode(),
                 "room_destroyed", 
                 "/landing.html"
             );
-            broker.convertAndSend("/topic/room/" + roomCode + "/error", error);
+            broker.convertAndSend("/topic/room/" + room.getRoomCode() + "/error", error);
+            return;
         }
+        if (immediate) {
+            broadcaster.publishNow(room);
+        } else {
+            broadcaster.publish(room);
+        }
+    }
+
+    /**
+     * Runs a room command. In "actor" mode the inbound thread only queues it on the room's
+     * mailbox and moves on; in "direct" mode it runs the command itself.
+     */
+    private void dispatch(Room room, Runnable command) {
+        if (!"actor".equalsIgnoreCase(commandMode)) {
+            command.run();
+            return;
+        }
+        room.execute(() -> {
+            try {
+                command.run();
+            } catch (ChairAccessException ex) {
+                // Thrown off the inbound thread, so the @MessageExceptionHandler is not involved
+                handleChairAccessException(ex);
+            }
+        });
+    }
+
+    /**
+     * Returns the room a message is addressed to. A session that joined has the room bound to
+     * its session attributes, so its messages skip the repository and string handling as long
+     * as they address that room and it still exists.
+     */
+    private Room resolveRoom(String roomCode, StompHeaderAccessor headerAccessor) {
+        Room room = RoomRouting.boundRoom(headerAccessor.getSessionAttributes());
+        if (room != null && !room.isRemoved() && room.isAddressedBy(roomCode)) {
+            return room;
+        }
+        return roomRepository.getByClientCodeOrThrow(roomCode);
+    }
+
+    private static void bindRoom(StompHeaderAccessor headerAccessor, Room room) {
+        RoomRouting.bindRoom(headerAccessor.getSessionAttributes(), room);
     }
 
     @MessageMapping("/room/{roomCode}/join")
     public void join(@DestinationVariable String roomCode, @Valid @Payload Join msg, StompHeaderAccessor headerAccessor) {
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
         String sessionId = headerAccessor.getSessionId();
         
         // This will throw RoomNotFoundException if room doesn't exist
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
+        String normalizedRoomCode = room.getRoomCode();
         
         roomRepository.trackSession(sessionId, normalizedRoomCode);
-        room.upsertMember(sessionId, msg.name());
-        
-        // Check if this is a chair joining (by checking the name)
-        if ("Chair".equals(msg.name())) {
-            room.assumeChairRole(sessionId);
-        }
-        
-        broadcast(normalizedRoomCode);
+        bindRoom(headerAccessor, room);
+        dispatch(room, () -> {
+            boolean changed = room.upsertMember(sessionId, msg.name());
+
+            // The newcomer gets the state directly instead of with a broadcast to everyone
+            broadcaster.sendSnapshot(room, sessionId);
+
+            // Check if this is a chair joining (by checking the name)
+            if ("Chair".equals(msg.name())) {
+                if (room.assumeChairRole(sessionId) || changed) {
+                    broadcast(room);
+                }
+            } else if (changed) {
+                broadcastMembers(room);
+            }
+        });
+    }
+
+    @MessageMapping("/room/{roomCode}/resync")
+    public void resync(@DestinationVariable String roomCode, StompHeaderAccessor headerAccessor) {
+        Room room = resolveRoom(roomCode, headerAccessor);
+        // Client missed a delta, send the current base state to that session only
+        broadcaster.sendSnapshot(room, headerAccessor.getSessionId());
     }
 
     @MessageMapping("/room/{roomCode}/request")
     public void request(@DestinationVariable String roomCode, @Valid @Payload RequestSpeak msg, StompHeaderAccessor headerAccessor) {
         if (msg == null || msg.name() == null || msg.name().isBlank()) return;
 
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
         String sessionId = headerAccessor.getSessionId();
         String participantName = msg.name().trim();
-        boolean chairSession = room.isChairSession(sessionId);
-        
-        if (chairSession) {
-            room.addProxyMember(sessionId, participantName);
-        } else {
-            room.upsertMember(sessionId, participantName);
-        }
-        String participantId = chairSession
-                ? sessionId + ":proxy:" + Instant.now().toEpochMilli() + ":" + UUID.randomUUID()
-                : sessionId;
-        room.addParticipantToQueue(new Participant(participantId, participantName, Instant.now().getEpochSecond()));
-        broadcast(normalizedRoomCode);
+        dispatch(room, () -> {
+            boolean chairSession = room.isChairSession(sessionId);
+
+            boolean changed = chairSession
+                    ? room.addProxyMember(sessionId, participantName)
+                    : room.upsertMember(sessionId, participantName);
+            String participantId = chairSession
+                    ? sessionId + ":proxy:" + Instant.now().toEpochMilli() + ":" + UUID.randomUUID()
+                    : sessionId;
+            changed |= room.addParticipantToQueue(new Participant(participantId, participantName, Instant.now().getEpochSecond()));
+            if (changed) {
+                broadcast(room);
+            }
+        });
     }
 
     @MessageMapping("/room/{roomCode}/withdraw")
-    public void withdraw(@DestinationVariable String roomCode, @Valid @Payload Withdraw msg) {
+    public void withdraw(@DestinationVariable String roomCode, @Valid @Payload Withdraw msg, StompHeaderAccessor headerAccessor) {
         if (msg == null || msg.name() == null || msg.name().isBlank()) return;
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
         
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
-        room.removeMemberByName(msg.name());
-        room.withdrawParticipant(msg.name());
-        broadcast(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
+        dispatch(room, () -> {
+            boolean changed = room.removeMemberByName(msg.name());
+            changed |= room.withdrawParticipant(msg.name());
+            if (changed) {
+                broadcast(room);
+            }
+        });
     }
 
     @MessageMapping("/room/{roomCode}/next")
     public void next(@DestinationVariable String roomCode, StompHeaderAccessor headerAccessor) {
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
         String sessionId = headerAccessor.getSessionId();
         
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
-        room.nextParticipant(sessionId);
-        broadcast(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
+        dispatch(room, () -> {
+            if (room.nextParticipant(sessionId)) {
+                broadcastNow(room);
+            }
+        });
     }
 
     @MessageMapping("/room/{roomCode}/timer")
     public void timer(@DestinationVariable String roomCode, @Payload TimerCtrl ctrl, StompHeaderAccessor headerAccessor) {
         if (ctrl == null || ctrl.action() == null) return;
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
         String sessionId = headerAccessor.getSessionId();
         
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
-        switch (ctrl.action().toLowerCase()) {
-            case "start" -> room.startTimer(sessionId);
-            case "pause" -> room.pauseTimer(sessionId);
-            case "reset" -> room.resetTimer(sessionId);
-        }
-        broadcast(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
+        dispatch(room, () -> {
+            boolean changed = switch (ctrl.action().toLowerCase()) {
+                case "start" -> room.startTimer(sessionId);
+                case "pause" -> room.pauseTimer(sessionId);
+                case "reset" -> room.resetTimer(sessionId);
+                default -> false;
+            };
+            if (changed) {
+                broadcastNow(room);
+            }
+        });
     }
 
     @MessageMapping("/room/{roomCode}/setLimit")
     public void setLimit(@DestinationVariable String roomCode, @Payload SetLimit msg, StompHeaderAccessor headerAccessor) {
         if (msg == null) return;
         int s = Math.max(10, Math.min(3600, msg.seconds()));
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
         String sessionId = headerAccessor.getSessionId();
         
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
-        room.updateLimit(sessionId, s);
-        broadcast(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
+        dispatch(room, () -> {
+            if (room.updateLimit(sessionId, s)) {
+                broadcastNow(room);
+            }
+        });
     }
 
     @MessageMapping("/room/{roomCode}/assumeChair")
     public void assumeChair(@DestinationVariable String roomCode, @Valid @Payload AssumeChair msg, StompHeaderAccessor headerAccessor) {
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
         String sessionId = headerAccessor.getSessionId();
         
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
-        
-        // Try to assume chair role - Room entity handles the check
-        room.assumeChairRole(sessionId);
-        roomRepository.trackSession(sessionId, normalizedRoomCode);
-        broadcast(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
+        String normalizedRoomCode = room.getRoomCode();
         
-        // Send success response back on the general topic but include request ID
-        broker.convertAndSend("/topic/room/" + normalizedRoomCode + "/chairAssumed", 
-            Map.of("success", true, "requestId", msg.requestId()));
+        dispatch(room, () -> {
+            // Try to assume chair role - Room entity handles the check
+            boolean changed = room.assumeChairRole(sessionId);
+            roomRepository.trackSession(sessionId, normalizedRoomCode);
+            bindRoom(headerAccessor, room);
+            if (changed) {
+                broadcastNow(room);
+            }
+
+            // Send success response back on the general topic but include request ID
+            broker.convertAndSend("/topic/room/" + normalizedRoomCode + "/chairAssumed",
+                Map.of("success", true, "requestId", msg.requestId()));
+        });
     }
     
     @MessageMapping("/room/{roomCode}/poll/start")
     public void startPoll(@DestinationVariable String roomCode, @Valid @Payload StartPoll msg, StompHeaderAccessor headerAccessor) {
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
         String sessionId = headerAccessor.getSessionId();
         
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
         
-        room.startPoll(sessionId, msg.question(), msg.pollType(), msg.options(), msg.votesPerParticipant());
-        broadcast(normalizedRoomCode);
+        dispatch(room, () -> {
+            if (room.startPoll(sessionId, msg.question(), msg.pollType(), msg.options(), msg.votesPerParticipant())) {
+                broadcastNow(room);
+            }
+        });
     }
     
     @MessageMapping("/room/{roomCode}/poll/vote")
     public void castVote(@DestinationVariable String roomCode, @Valid @Payload CastVote msg, StompHeaderAccessor headerAccessor) {
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
         String sessionId = headerAccessor.getSessionId();
         
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
         
-        if (room.castVote(sessionId, msg.vote())) {
-            broadcast(normalizedRoomCode);
+        // Single-choice votes are counted in parallel even in actor mode, not queued on the mailbox
+        if (room.countsVotesInParallel()) {
+            if (room.castVote(sessionId, msg.vote())) {
+                broadcast(room);
+            }
+            return;
         }
+        dispatch(room, () -> {
+            if (room.castVote(sessionId, msg.vote())) {
+                broadcast(room);
+            }
+        });
     }
     
     @MessageMapping("/room/{roomCode}/poll/end")
     public void endPoll(@DestinationVariable String roomCode, StompHeaderAccessor headerAccessor) {
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
         String sessionId = headerAccessor.getSessionId();
         
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
         
-        room.endPoll(sessionId);
-        broadcast(normalizedRoomCode);
+        dispatch(room, () -> {
+            if (room.endPoll(sessionId)) {
+                broadcastNow(room);
+            }
+        });
     }
     
     @MessageMapping("/room/{roomCode}/poll/close")
     public void closePoll(@DestinationVariable String roomCode, StompHeaderAccessor headerAccessor) {
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
         String sessionId = headerAccessor.getSessionId();
         
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
         
-        room.closePoll(sessionId);
-        broadcast(normalizedRoomCode);
+        dispatch(room, () -> {
+            if (room.closePoll(sessionId)) {
+                broadcastNow(room);
+            }
+        });
     }
     
     @MessageMapping("/room/{roomCode}/poll/cancel")
     public void cancelPoll(@DestinationVariable String roomCode, StompHeaderAccessor headerAccessor) {
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
         String sessionId = headerAccessor.getSessionId();
         
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
         
-        room.cancelPoll(sessionId);
-        broadcast(normalizedRoomCode);
+        dispatch(room, () -> {
+            if (room.cancelPoll(sessionId)) {
+                broadcastNow(room);
+            }
+        });
     }
     
     @MessageMapping("/room/{roomCode}/updateConfig")
     public void updateRoomConfig(@DestinationVariable String roomCode, @Payload UpdateRoomConfig msg, StompHeaderAccessor headerAccessor) {
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
         String sessionId = headerAccessor.getSessionId();
         
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
         
         // Parse enum values (allow null/empty)
         MeetingGoal meetingGoal = parseEnum(MeetingGoal.class, msg.meetingGoal());
@@ -357,19 +447,24 @@ public class MeetingController {
         DecisionRule decisionRule = parseEnum(DecisionRule.class, msg.decisionRule());
         Deliverable deliverable = parseEnum(Deliverable.class, msg.deliverable());
         
-        room.updateRoomConfig(sessionId, msg.topic(), meetingGoal, participationFormat, decisionRule, deliverable, msg.agenda());
-        broadcast(normalizedRoomCode);
+        dispatch(room, () -> {
+            if (room.updateRoomConfig(sessionId, msg.topic(), meetingGoal, participationFormat, decisionRule, deliverable, msg.agenda())) {
+                broadcastNow(room);
+            }
+        });
     }
 
     @MessageMapping("/room/{roomCode}/agenda/navigate")
     public void navigateAgenda(@DestinationVariable String roomCode, @Payload Map<String, String> msg, StompHeaderAccessor headerAccessor) {
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
         String sessionId = headerAccessor.getSessionId();
         String direction = msg != null ? msg.get("direction") : null;
         if (!"next".equals(direction) && !"prev".equals(direction)) return;
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
-        room.navigateAgenda(sessionId, direction);
-        broadcast(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
+        dispatch(room, () -> {
+            if (room.navigateAgenda(sessionId, direction)) {
+                broadcastNow(room);
+            }
+        });
     }
     
     private <E extends Enum<E>> E parseEnum(Class<E> enumClass, String value) {
@@ -385,10 +480,10 @@ public class MeetingController {
     
     @MessageMapping("/room/{roomCode}/destroy")
     public void destroyRoom(@DestinationVariable String roomCode, StompHeaderAccessor headerAccessor) {
-        String normalizedRoomCode = normalizeRoomCode(roomCode);
         String sessionId = headerAccessor.getSessionId();
         
-        Room room = roomRepository.getByCodeOrThrow(normalizedRoomCode);
+        Room room = resolveRoom(roomCode, headerAccessor);
+        String normalizedRoomCode = room.getRoomCode();
         
         // Only chair can destroy the room - check via Room's internal validation
         if (room.isChairSession(sessionId)) {
@@ -418,15 +513,16 @@ public class MeetingController {
         String sessionId = event.getSessionId();
         
         roomRepository.getBySessionId(sessionId)
-                .ifPresent(room -> {
-                    room.removeMember(sessionId);
+                .ifPresent(room -> dispatch(room, () -> {
+                    boolean changed = room.removeMember(sessionId);
 
                     if (room.isChairSession(sessionId)) {
                         room.releaseChairRole(sessionId);
+                        broadcast(room);
+                    } else if (changed) {
+                        broadcastMembers(room);
                     }
-
-                    broadcast(room.getRoomCode());
-                });
+                }));
         
         roomRepository.untrackSession(sessionId);
     }
@@ -0,0 +1,333 @@
+package de.koderman.infrastructure;
+
+import de.koderman.domain.ChannelUpdate;
+import de.koderman.domain.Room;
+import de.koderman.domain.RoomRepository;
+import de.koderman.domain.State;
+import de.koderman.domain.StateDelta;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Publishes room state to /topic/room/{code}/state.
+ * In "full" mode every broadcast carries the whole State. In "delta" mode clients get a full
+ * keyframe first and then versioned StateDelta patches on /topic/room/{code}/delta, with another
+ * keyframe every keyframeInterval patches so late or out-of-sync clients converge.
+ * In "channels" mode only the parts of the State that changed go out, each as a ChannelUpdate
+ * on its own topic (/queue, /timer, /poll, /members, /config), so clients can subscribe to just
+ * what they render; the full State only reaches single sessions through sendSnapshot().
+ * <p>
+ * publish() coalesces: all changes to a room within coalesceWindowMs go out as one message
+ * carrying the state at flush time. publishNow() skips the window for chair commands.
+ * <p>
+ * Full states are serialized once per room version and the JSON bytes are reused by every
+ * later broadcast, keyframe or resync reply until the room changes again.
+ * <p>
+ * publishMembers() is for joins and leaves: in full and delta mode they reach the room as a StateDelta
+ * carrying just the member edits, while the joining session gets its state from sendSnapshot().
+ * <p>
+ * With the {@link StompFrameFanout} enabled, state and delta messages bypass the broker and are
+ * written to the subscribed sessions as one pre-encoded frame.
+ */
+@Slf4j
+@Component
+public class RoomBroadcaster {
+    @Value("${app.broadcast.mode:full}")
+    private String mode = "full"; // Default for manual instantiation in tests
+
+    @Value("${app.broadcast.keyframe-interval:50}")
+    private int keyframeInterval = 50;
+
+    @Value("${app.broadcast.coalesce-window-ms:75}")
+    private long coalesceWindowMs = 0; // Default for manual instantiation in tests: send synchronously
+
+    private final SimpMessagingTemplate broker;
+    private final RoomRepository roomRepository;
+    private final ObjectMapper objectMapper;
+    private final StompFrameFanout frameFanout; // Null or disabled: everything goes through the broker
+    private final ConcurrentHashMap<String, RoomStream> streams = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SerializedState> serializedStates = new ConcurrentHashMap<>();
+    // Rooms with a flush scheduled; the entry is removed right before the flush snapshots
+    private final ConcurrentHashMap<String, PendingFlush> pendingFlushes = new ConcurrentHashMap<>();
+    private ThreadPoolTaskScheduler flushScheduler;
+
+    public RoomBroadcaster(SimpMessagingTemplate broker, RoomRepository roomRepository, ObjectMapper objectMapper) {
+        this(broker, roomRepository, objectMapper, null);
+    }
+
+    @Autowired
+    public RoomBroadcaster(SimpMessagingTemplate broker, RoomRepository roomRepository, ObjectMapper objectMapper,
+            StompFrameFanout frameFanout) {
+        this.broker = broker;
+        this.roomRepository = roomRepository;
+        this.objectMapper = objectMapper;
+        this.frameFanout = frameFanout;
+        roomRepository.addRoomRemovedListener(roomCode -> {
+            streams.remove(roomCode);
+            serializedStates.remove(roomCode);
+            pendingFlushes.remove(roomCode);
+        });
+    }
+
+    /**
+     * Schedules a broadcast of the room's state at the end of the coalescing window.
+     * Further calls inside the window are absorbed; the flush always sends the latest state.
+     */
+    public void publish(Room room) {
+        schedule(room, false);
+    }
+
+    /**
+     * Like publish() for changes to the member list only. Unless something else changed in the
+     * same window, the room gets a member delta instead of the full state.
+     */
+    public void publishMembers(Room room) {
+        schedule(room, true);
+    }
+
+    private void schedule(Room room, boolean membersOnly) {
+        if (coalesceWindowMs <= 0) {
+            send(room, membersOnly);
+            return;
+        }
+        PendingFlush[] created = new PendingFlush[1];
+        pendingFlushes.compute(room.getRoomCode(), (code, pending) -> {
+            if (pending == null) {
+                return created[0] = new PendingFlush(room, membersOnly);
+            }
+            // One full change in the window makes the whole flush a full one
+            return pending.membersOnly() && !membersOnly ? new PendingFlush(pending.room(), false) : pending;
+        });
+        if (created[0] != null) {
+            flushScheduler().schedule(() -> flush(room.getRoomCode()),
+                    Instant.now().plus(Duration.ofMillis(coalesceWindowMs)));
+        }
+    }
+
+    /**
+     * Broadcasts right away, taking any pending coalesced flush along with it.
+     */
+    public void publishNow(Room room) {
+        pendingFlushes.remove(room.getRoomCode());
+        send(room, false);
+    }
+
+    private void flush(String roomCode) {
+        PendingFlush pending = pendingFlushes.remove(roomCode);
+        if (pending == null) {
+            return; // Already sent by publishNow
+        }
+        Room room = pending.room();
+        if (roomRepository.getByCode(roomCode).orElse(null) != room) {
+            return; // Destroyed or evicted while the flush was pending
+        }
+        try {
+            send(room, pending.membersOnly());
+        } catch (RuntimeException ex) {
+            log.error("Room[{}] coalesced broadcast failed", roomCode, ex);
+        }
+    }
+
+    private synchronized ThreadPoolTaskScheduler flushScheduler() {
+        if (flushScheduler == null) {
+            flushScheduler = new ThreadPoolTaskScheduler();
+            flushScheduler.setPoolSize(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+            flushScheduler.setThreadNamePrefix("room-broadcast-");
+            flushScheduler.initialize();
+        }
+        return flushScheduler;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (flushScheduler != null) {
+            flushScheduler.shutdown();
+        }
+    }
+
+    private void send(Room room, boolean membersOnly) {
+        String roomCode = room.getRoomCode();
+        boolean deltas = isDeltaMode() || membersOnly;
+
+        RoomStream stream = streams.computeIfAbsent(roomCode, code -> new RoomStream(room));
+        synchronized (stream) {
+            if (stream.room != room) {
+                // Code was reused by a new room, the old base is meaningless
+                stream.reset(room);
+            }
+            // Snapshot inside the stream lock so versions leave in increasing order
+            SerializedState next = serialize(room);
+            if (isChannelMode()) {
+                sendChannels(stream, next);
+                return;
+            }
+            if (!deltas || stream.last == null || stream.deltasSinceKeyframe >= keyframeInterval) {
+                sendKeyframe(stream, next);
+                return;
+            }
+            if (next.version() == stream.last.version()) {
+                return;
+            }
+            StateDelta delta = StateDelta.between(stream.last.state(), next.state());
+            if (!isDeltaMode() && !delta.isMembersOnly()) {
+                // Something besides the members changed after all; full mode ships that whole
+                sendKeyframe(stream, next);
+                return;
+            }
+            if (!delta.isEmpty()) {
+                sendDelta(roomCode, delta);
+                stream.deltasSinceKeyframe++;
+            }
+            stream.last = next;
+        }
+    }
+
+    // Publishes the channels that differ from the last published state, all of them at first
+    private void sendChannels(RoomStream stream, SerializedState next) {
+        if (stream.last != null && next.version() == stream.last.version()) {
+            return;
+        }
+        String roomCode = next.room().getRoomCode();
+        for (ChannelUpdate update : ChannelUpdate.between(stream.last != null ? stream.last.state() : null, next.state())) {
+            sendConverted("/topic/room/" + roomCode + "/" + update.channel(), update);
+        }
+        stream.last = next;
+    }
+
+    private void sendKeyframe(RoomStream stream, SerializedState next) {
+        sendJson(stateTopic(next.room().getRoomCode()), next.json());
+        stream.last = next;
+        stream.deltasSinceKeyframe = 0;
+    }
+
+    /**
+     * Sends a full State to a single session. This is the last state published to the room,
+     * so the next patch on the room topic applies cleanly on top of it.
+     */
+    public void sendSnapshot(Room room, String sessionId) {
+        SerializedState state = null;
+        RoomStream stream = streams.get(room.getRoomCode());
+        if (stream != null) {
+            synchronized (stream) {
+                if (stream.room == room) {
+                    state = stream.last;
+                }
+            }
+        }
+        if (state == null) {
+            state = serialize(room);
+        }
+        // User destinations resolve to the session itself when the "user" equals the session id header
+        SimpMessageHeaderAccessor headers = jsonHeaders();
+        headers.setSessionId(sessionId);
+        broker.send("/user/" + sessionId + "/queue/state", MessageBuilder.createMessage(state.json(), headers.getMessageHeaders()));
+    }
+
+    /**
+     * Returns the room's state serialized to JSON, running Jackson only if the room
+     * changed since the cached version.
+     */
+    SerializedState serialize(Room room) {
+        long version = room.getVersion();
+        SerializedState cached = serializedStates.get(room.getRoomCode());
+        if (cached != null && cached.room() == room && cached.version() == version) {
+            return cached;
+        }
+        State state = room.snapshot();
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(state);
+        } catch (JsonProcessingException ex) {
+            throw new MessageConversionException("Could not serialize state of room " + room.getRoomCode(), ex);
+        }
+        SerializedState fresh = new SerializedState(room, state.version(), state, json);
+        // Concurrent broadcasts may race here; never replace a newer entry with an older one
+        return serializedStates.merge(room.getRoomCode(), fresh,
+                (existing, candidate) -> existing.room() == candidate.room() && existing.version() >= candidate.version()
+                        ? existing : candidate);
+    }
+
+    private void sendDelta(String roomCode, StateDelta delta) {
+        sendConverted("/topic/room/" + roomCode + "/delta", delta);
+    }
+
+    private void sendConverted(String destination, Object payload) {
+        if (!isFrameFanout()) {
+            broker.convertAndSend(destination, payload);
+            return;
+        }
+        try {
+            sendJson(destination, objectMapper.writeValueAsBytes(payload));
+        } catch (JsonProcessingException ex) {
+            throw new MessageConversionException("Could not serialize message to " + destination, ex);
+        }
+    }
+
+    // The bytes are shared between sends, only the small header map is created per message
+    private void sendJson(String destination, byte[] json) {
+        if (isFrameFanout()) {
+            frameFanout.send(destination, json);
+            return;
+        }
+        broker.send(destination, MessageBuilder.createMessage(json, jsonHeaders().getMessageHeaders()));
+    }
+
+    private boolean isFrameFanout() {
+        return frameFanout != null && frameFanout.isEnabled();
+    }
+
+    private static SimpMessageHeaderAccessor jsonHeaders() {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        headers.setLeaveMutable(true);
+        return headers;
+    }
+
+    public boolean isDeltaMode() {
+        return "delta".equalsIgnoreCase(mode);
+    }
+
+    public boolean isChannelMode() {
+        return "channels".equalsIgnoreCase(mode);
+    }
+
+    private static String stateTopic(String roomCode) {
+        return "/topic/room/" + roomCode + "/state";
+    }
+
+    record SerializedState(Room room, long version, State state, byte[] json) {}
+
+    private record PendingFlush(Room room, boolean membersOnly) {}
+
+    private static final class RoomStream {
+        private Room room;
+        private SerializedState last;
+        private int deltasSinceKeyframe;
+
+        private RoomStream(Room room) {
+            this.room = room;
+        }
+
+        private void reset(Room room) {
+            this.room = room;
+            this.last = null;
+            this.deltasSinceKeyframe = 0;
+        }
+    }
+}
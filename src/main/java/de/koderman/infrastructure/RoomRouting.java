@@ -0,0 +1,43 @@
+package de.koderman.infrastructure;
+
+import de.koderman.domain.Room;
+
+import java.util.Map;
+
+/**
+ * How inbound STOMP messages find their room before a handler runs: the room a session joined,
+ * bound to its session attributes, and a key for the room code in a destination that every
+ * client spelling of the code shares.
+ */
+public final class RoomRouting {
+    public static final String ROOM_ATTRIBUTE = "room"; // STOMP session attribute holding the joined Room
+
+    private RoomRouting() {
+    }
+
+    /**
+     * Returns the room bound to the session attributes when the session joined, or null.
+     */
+    public static Room boundRoom(Map<String, Object> sessionAttributes) {
+        return sessionAttributes != null && sessionAttributes.get(ROOM_ATTRIBUTE) instanceof Room room ? room : null;
+    }
+
+    public static void bindRoom(Map<String, Object> sessionAttributes, Room room) {
+        if (sessionAttributes != null) {
+            sessionAttributes.put(ROOM_ATTRIBUTE, room);
+        }
+    }
+
+    /**
+     * Returns the same number for every way clients may write a room code, in any case and
+     * with "0" for "O", e.g. to pick a worker for the room. Allocates nothing.
+     */
+    public static int keyOf(String clientCode) {
+        int key = 0;
+        for (int i = 0; i < clientCode.length(); i++) {
+            char c = Character.toUpperCase(clientCode.charAt(i));
+            key = 31 * key + (c == '0' ? 'O' : c);
+        }
+        return key;
+    }
+}
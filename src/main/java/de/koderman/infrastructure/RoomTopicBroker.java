@@ -0,0 +1,188 @@
+package de.koderman.infrastructure;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Broker for /topic built around the /topic/room/{code}/* layout, used instead of the simple
+ * broker's /topic handling with app.broadcast.broker=room. The simple broker keeps /queue,
+ * CONNECT and heartbeats.
+ * <p>
+ * Subscriptions are indexed by room code and then by the rest of the destination, so a
+ * message finds its subscribers with two hash lookups instead of matching every subscription.
+ * Each message is encoded as a STOMP frame once and queued on every subscriber's
+ * {@link SessionOutbox} behind its "subscription" header line; the outbox's own writer batches
+ * and writes it, so the publisher never waits for a socket. Frames to one session keep their
+ * publish order.
+ */
+public class RoomTopicBroker extends AbstractBrokerMessageHandler {
+    private static final String TOPIC_PREFIX = "/topic/";
+    private static final String ROOM_TOPIC_PREFIX = "/topic/room/";
+
+    private final WebSocketSessionRegistry sessions;
+    private final AtomicLong messageIds = new AtomicLong();
+    // Room code (or the whole destination outside /topic/room/) -> rest of the destination -> subscribers
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, ConcurrentHashMap<Subscriber, String>>> subscribers =
+            new ConcurrentHashMap<>();
+    // Session -> subscription id -> destination, to undo UNSUBSCRIBE and DISCONNECT
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, String>> subscriptionsBySession = new ConcurrentHashMap<>();
+
+    private final LongAdder messagesPublished = new LongAdder();
+    private final LongAdder framesQueued = new LongAdder();
+    private final LongAdder framesDropped = new LongAdder();
+
+    public RoomTopicBroker(SubscribableChannel clientInboundChannel, MessageChannel clientOutboundChannel,
+            SubscribableChannel brokerChannel, WebSocketSessionRegistry sessions) {
+        super(clientInboundChannel, clientOutboundChannel, brokerChannel, List.of(TOPIC_PREFIX));
+        this.sessions = sessions;
+    }
+
+    @Override
+    protected void startInternal() {
+        publishBrokerAvailableEvent();
+    }
+
+    @Override
+    protected void stopInternal() {
+        publishBrokerUnavailableEvent();
+    }
+
+    @Override
+    protected void handleMessageInternal(Message<?> message) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (type == null || !checkDestinationPrefix(destination)) {
+            return; // "/queue" belongs to the simple broker; DISCONNECT has no destination and passes
+        }
+        switch (type) {
+            case SUBSCRIBE -> subscribe(sessionId,
+                    SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()), destination);
+            case UNSUBSCRIBE -> unsubscribe(sessionId,
+                    SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()));
+            case DISCONNECT -> disconnect(sessionId);
+            case MESSAGE -> publish(destination, message);
+            default -> { }
+        }
+    }
+
+    private void subscribe(String sessionId, String subscriptionId, String destination) {
+        if (sessionId == null || subscriptionId == null || destination == null) {
+            return;
+        }
+        subscriptionsBySession.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>()).put(subscriptionId, destination);
+        subscribers.computeIfAbsent(roomKey(destination), key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(channel(destination), key -> new ConcurrentHashMap<>())
+                .put(new Subscriber(sessionId, subscriptionId), StompFrames.head(subscriptionId));
+    }
+
+    private void unsubscribe(String sessionId, String subscriptionId) {
+        Map<String, String> subscriptions = sessionId != null ? subscriptionsBySession.get(sessionId) : null;
+        String destination = subscriptions != null && subscriptionId != null ? subscriptions.remove(subscriptionId) : null;
+        if (destination != null) {
+            removeSubscriber(destination, new Subscriber(sessionId, subscriptionId));
+        }
+    }
+
+    private void disconnect(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        Map<String, String> subscriptions = subscriptionsBySession.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.forEach((subscriptionId, destination) ->
+                    removeSubscriber(destination, new Subscriber(sessionId, subscriptionId)));
+        }
+    }
+
+    private void removeSubscriber(String destination, Subscriber subscriber) {
+        subscribers.computeIfPresent(roomKey(destination), (key, byChannel) -> {
+            byChannel.computeIfPresent(channel(destination), (channel, bySubscriber) -> {
+                bySubscriber.remove(subscriber);
+                return bySubscriber.isEmpty() ? null : bySubscriber;
+            });
+            return byChannel.isEmpty() ? null : byChannel;
+        });
+    }
+
+    private void publish(String destination, Message<?> message) {
+        if (destination == null) {
+            return;
+        }
+        messagesPublished.increment();
+        Map<String, ConcurrentHashMap<Subscriber, String>> byChannel = subscribers.get(roomKey(destination));
+        Map<Subscriber, String> bySubscriber = byChannel != null ? byChannel.get(channel(destination)) : null;
+        if (bySubscriber == null || bySubscriber.isEmpty()) {
+            return;
+        }
+        Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE); // MimeType or String
+        String frame = StompFrames.tail(destination, contentType != null ? contentType.toString() : null,
+                "r" + messageIds.incrementAndGet(), payloadBytes(message));
+        bySubscriber.forEach((subscriber, head) -> deliver(subscriber.sessionId(), head, frame));
+    }
+
+    private void deliver(String sessionId, String head, String frame) {
+        SessionOutbox outbox = sessions.outbox(sessionId);
+        if (outbox == null) {
+            return; // Closed; DISCONNECT cleans up its subscriptions
+        }
+        if (outbox.offer(head, frame)) {
+            framesQueued.increment();
+        } else {
+            framesDropped.increment(); // Over its backlog limit, the session is being closed
+        }
+    }
+
+    private static byte[] payloadBytes(Message<?> message) {
+        // SimpMessagingTemplate has converted every payload to bytes by the time it gets here
+        Object payload = message.getPayload();
+        return payload instanceof byte[] bytes ? bytes : String.valueOf(payload).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // "/topic/room/ABCD/state" -> "ABCD"; other topics are their own key
+    private static String roomKey(String destination) {
+        if (!destination.startsWith(ROOM_TOPIC_PREFIX)) {
+            return destination;
+        }
+        int end = destination.indexOf('/', ROOM_TOPIC_PREFIX.length());
+        return end < 0 ? destination.substring(ROOM_TOPIC_PREFIX.length()) : destination.substring(ROOM_TOPIC_PREFIX.length(), end);
+    }
+
+    // "/topic/room/ABCD/state" -> "state"
+    private static String channel(String destination) {
+        if (!destination.startsWith(ROOM_TOPIC_PREFIX)) {
+            return "";
+        }
+        int end = destination.indexOf('/', ROOM_TOPIC_PREFIX.length());
+        return end < 0 ? "" : destination.substring(end + 1);
+    }
+
+    /**
+     * Counters since startup plus the current index sizes, for /healthz/broker.
+     */
+    public Map<String, Long> metrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("rooms", (long) subscribers.size());
+        metrics.put("sessions", (long) subscriptionsBySession.size());
+        metrics.put("subscriptions", subscriptionsBySession.values().stream().mapToLong(Map::size).sum());
+        metrics.put("messagesPublished", messagesPublished.sum());
+        metrics.put("framesQueued", framesQueued.sum());
+        metrics.put("framesDropped", framesDropped.sum());
+        return metrics;
+    }
+
+    private record Subscriber(String sessionId, String subscriptionId) {}
+}
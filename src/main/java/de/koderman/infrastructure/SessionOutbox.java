@@ -0,0 +1,125 @@
+package de.koderman.infrastructure;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pre-encoded STOMP frames waiting to be written to one WebSocket session, for the writers
+ * that bypass Spring's outbound channel (the room broker and the frame fan-out). offer() only
+ * queues, so a publisher never waits for a slow socket; one virtual thread at a time drains
+ * the queue and writes all frames queued by then as a single WebSocket message.
+ * <p>
+ * A frame is queued as its per-subscription head and the body shared by all subscribers, and
+ * only joined when the writer copies both into its batch. If the backlog exceeds the limit,
+ * the session is closed like Spring's ConcurrentWebSocketSessionDecorator does. A
+ * {@link ConflatingWebSocketSession} already queues on its own, so frames for it are handed
+ * over whole, where they can still be conflated.
+ */
+@Slf4j
+public final class SessionOutbox {
+    private static final int MAX_BATCH_CHARS = 64 * 1024; // A single frame may still exceed this
+    private static final Executor WRITERS = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final WebSocketSession session;
+    private final long limitChars;
+    private final WebSocketSessionRegistry.OutboundStats stats;
+    private final ConcurrentLinkedQueue<Frame> frames = new ConcurrentLinkedQueue<>();
+    private final AtomicLong queuedChars = new AtomicLong();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean closed;
+
+    SessionOutbox(WebSocketSession session, long limitChars, WebSocketSessionRegistry.OutboundStats stats) {
+        this.session = session;
+        this.limitChars = limitChars;
+        this.stats = stats;
+    }
+
+    /**
+     * Queues the frame head + body and returns whether it was taken; false once the outbox is
+     * closed or the backlog went over the limit, which closes the session.
+     */
+    public boolean offer(String head, String body) {
+        if (closed) {
+            return false;
+        }
+        if (session instanceof ConflatingWebSocketSession conflating) {
+            conflating.sendMessage(new TextMessage(head.concat(body))); // Only queues
+            return true;
+        }
+        if (queuedChars.addAndGet(head.length() + body.length()) > limitChars) {
+            overflow();
+            return false;
+        }
+        frames.add(new Frame(head, body));
+        if (scheduled.compareAndSet(false, true)) {
+            WRITERS.execute(this::drain);
+        }
+        return true;
+    }
+
+    /**
+     * Drops what is queued; called once the session is gone.
+     */
+    void close() {
+        closed = true;
+        frames.clear();
+    }
+
+    private void overflow() {
+        closed = true;
+        frames.clear();
+        stats.terminated();
+        log.debug("Closing session {}: outbox limit exceeded", session.getId());
+        // Off the publisher's thread, closing may wait for a write in progress
+        WRITERS.execute(() -> {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException | RuntimeException ex) {
+                log.debug("Closing session {} failed: {}", session.getId(), ex.toString());
+            }
+        });
+    }
+
+    private void drain() {
+        try {
+            while (!closed && !frames.isEmpty()) {
+                StringBuilder batch = new StringBuilder();
+                int count = 0;
+                Frame frame;
+                while (batch.length() < MAX_BATCH_CHARS && (frame = frames.poll()) != null) {
+                    batch.append(frame.head()).append(frame.body());
+                    count++;
+                }
+                queuedChars.addAndGet(-batch.length());
+                write(batch, count);
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        // A frame added between the last poll and the reset above still needs a writer
+        if (!closed && !frames.isEmpty() && scheduled.compareAndSet(false, true)) {
+            WRITERS.execute(this::drain);
+        }
+    }
+
+    private void write(StringBuilder batch, int count) {
+        try {
+            session.sendMessage(new TextMessage(batch));
+            stats.written(count);
+        } catch (IOException | RuntimeException ex) {
+            // Transport failed; Spring notices on its side and ends the session
+            log.debug("Outbox write to session {} failed: {}", session.getId(), ex.toString());
+        }
+    }
+
+    private record Frame(String head, String body) {}
+}
@@ -0,0 +1,117 @@
+package de.koderman.infrastructure;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes room broadcasts straight to the subscribed WebSocket sessions instead of handing them
+ * to the broker, which frames the message again for every subscriber.
+ * <p>
+ * The STOMP MESSAGE frame of a broadcast (headers and JSON body) is encoded once; each
+ * subscriber's {@link SessionOutbox} queues that shared text behind its own "subscription"
+ * header line, so the broadcaster never waits for a slow socket. Subscriptions to
+ * /topic/room/ destinations are tracked from the inbound SUBSCRIBE, UNSUBSCRIBE and DISCONNECT
+ * frames; the broker still registers them too but never gets these messages.
+ * <p>
+ * Enabled with app.broadcast.fanout=frames; the default "broker" leaves all delivery to Spring.
+ */
+@Component
+public class StompFrameFanout implements ChannelInterceptor {
+    static final String ROOM_TOPIC_PREFIX = "/topic/room/";
+
+    @Value("${app.broadcast.fanout:broker}")
+    private String fanout = "broker"; // Default for manual instantiation in tests
+
+    private final AtomicLong messageIds = new AtomicLong();
+    private final WebSocketSessionRegistry sessions;
+    // Destination -> subscriber ("sessionId/subscriptionId") -> its encoded "subscription" header line
+    private final ConcurrentHashMap<String, Map<Subscriber, String>> subscribers = new ConcurrentHashMap<>();
+    // Session -> subscription id -> destination, to undo UNSUBSCRIBE and DISCONNECT
+    private final ConcurrentHashMap<String, Map<String, String>> subscriptionsBySession = new ConcurrentHashMap<>();
+
+    public StompFrameFanout(WebSocketSessionRegistry sessions) {
+        this.sessions = sessions;
+    }
+
+    public boolean isEnabled() {
+        return "frames".equalsIgnoreCase(fanout);
+    }
+
+    private void sessionClosed(String sessionId) {
+        Map<String, String> subscriptions = subscriptionsBySession.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.forEach((subscriptionId, destination) ->
+                    removeSubscriber(destination, new Subscriber(sessionId, subscriptionId)));
+        }
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        if (accessor.getCommand() == null || accessor.getSessionId() == null) {
+            return message;
+        }
+        switch (accessor.getCommand()) {
+            case SUBSCRIBE -> subscribed(accessor.getSessionId(), accessor.getSubscriptionId(), accessor.getDestination());
+            case UNSUBSCRIBE -> unsubscribed(accessor.getSessionId(), accessor.getSubscriptionId());
+            case DISCONNECT -> sessionClosed(accessor.getSessionId());
+            default -> { }
+        }
+        return message;
+    }
+
+    void subscribed(String sessionId, String subscriptionId, String destination) {
+        if (subscriptionId == null || destination == null || !destination.startsWith(ROOM_TOPIC_PREFIX)) {
+            return;
+        }
+        subscriptionsBySession.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>()).put(subscriptionId, destination);
+        subscribers.computeIfAbsent(destination, d -> new ConcurrentHashMap<>())
+                .put(new Subscriber(sessionId, subscriptionId), StompFrames.head(subscriptionId));
+    }
+
+    void unsubscribed(String sessionId, String subscriptionId) {
+        Map<String, String> subscriptions = subscriptionsBySession.get(sessionId);
+        String destination = subscriptions != null && subscriptionId != null ? subscriptions.remove(subscriptionId) : null;
+        if (destination != null) {
+            removeSubscriber(destination, new Subscriber(sessionId, subscriptionId));
+        }
+    }
+
+    private void removeSubscriber(String destination, Subscriber subscriber) {
+        subscribers.computeIfPresent(destination, (d, bySubscriber) -> {
+            bySubscriber.remove(subscriber);
+            return bySubscriber.isEmpty() ? null : bySubscriber;
+        });
+    }
+
+    /**
+     * Sends a JSON payload to everyone subscribed to the destination, encoding the frame once.
+     * Returns the number of subscribers it was queued for.
+     */
+    public int send(String destination, byte[] json) {
+        Map<Subscriber, String> bySubscriber = subscribers.get(destination);
+        if (bySubscriber == null || bySubscriber.isEmpty()) {
+            return 0;
+        }
+        String frame = StompFrames.tail(destination, "application/json", "f" + messageIds.incrementAndGet(), json);
+        int sent = 0;
+        for (Map.Entry<Subscriber, String> entry : bySubscriber.entrySet()) {
+            SessionOutbox outbox = sessions.outbox(entry.getKey().sessionId());
+            // A closed or overflowing session is forgotten on DISCONNECT
+            if (outbox != null && outbox.offer(entry.getValue(), frame)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    private record Subscriber(String sessionId, String subscriptionId) {}
+}
@@ -0,0 +1,64 @@
+package de.koderman.infrastructure;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hand-encoded STOMP MESSAGE frames for writing one broadcast to many subscribers.
+ * A frame is split in two: the per-subscriber head (command and "subscription" header) and
+ * the shared rest, which is encoded once per message.
+ */
+final class StompFrames {
+
+    private StompFrames() {
+    }
+
+    /**
+     * Returns the command line and "subscription" header that start one subscriber's frame.
+     */
+    static String head(String subscriptionId) {
+        return "MESSAGE\nsubscription:" + escape(subscriptionId) + "\n";
+    }
+
+    /**
+     * Returns the remaining headers, the body and the terminating NUL of a MESSAGE frame.
+     */
+    static String tail(String destination, String contentType, String messageId, byte[] body) {
+        StringBuilder frame = new StringBuilder(body.length + 128)
+                .append("destination:").append(escape(destination)).append('\n');
+        if (contentType != null) {
+            frame.append("content-type:").append(escape(contentType)).append('\n');
+        }
+        return frame.append("message-id:").append(messageId).append('\n')
+                .append("content-length:").append(body.length).append('\n')
+                .append('\n')
+                .append(new String(body, StandardCharsets.UTF_8))
+                .append('\0')
+                .toString();
+    }
+
+    // STOMP 1.2 header value escaping
+    private static String escape(String value) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement = switch (c) {
+                case '\\' -> "\\\\";
+                case ':' -> "\\c";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                default -> null;
+            };
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(value.length() + 8).append(value, 0, i);
+            }
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
+                } else {
+                    escaped.append(c);
+                }
+            }
+        }
+        return escaped != null ? escaped.toString() : value;
+    }
+}
@@ -0,0 +1,103 @@
+package de.koderman.infrastructure;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The open WebSocket sessions by id, for code that writes frames to them directly instead of
+ * through Spring's outbound channel. Filled by the handler decorator set up in WsConfig; the
+ * sessions registered here serialize their sends, and with app.websocket.conflate they are
+ * {@link ConflatingWebSocketSession}s. Each gets a {@link SessionOutbox}, so direct writers
+ * only queue and never wait for a socket.
+ */
+@Component
+public class WebSocketSessionRegistry {
+    // Same as Spring's default send buffer limit for a session
+    private static final long OUTBOX_LIMIT_CHARS = 512 * 1024;
+
+    private final ConcurrentHashMap<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SessionOutbox> outboxes = new ConcurrentHashMap<>();
+    private final OutboundStats outboundStats = new OutboundStats();
+
+    public void register(WebSocketSession session) {
+        outboxes.put(session.getId(), new SessionOutbox(session, OUTBOX_LIMIT_CHARS, outboundStats));
+        sessions.put(session.getId(), session);
+    }
+
+    public void unregister(String sessionId) {
+        sessions.remove(sessionId);
+        SessionOutbox outbox = outboxes.remove(sessionId);
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    /**
+     * Returns the open session with that id, or null.
+     */
+    public WebSocketSession get(String sessionId) {
+        WebSocketSession session = sessions.get(sessionId);
+        return session != null && session.isOpen() ? session : null;
+    }
+
+    /**
+     * Returns the outbox of the open session with that id, or null.
+     */
+    public SessionOutbox outbox(String sessionId) {
+        return get(sessionId) != null ? outboxes.get(sessionId) : null;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Counters shared by the sessions' outboxes and {@link ConflatingWebSocketSession}s;
+     * conflated frames stay at zero unless app.websocket.conflate is on.
+     */
+    public OutboundStats outboundStats() {
+        return outboundStats;
+    }
+
+    /**
+     * Outbound counters since startup plus the number of open sessions, for /healthz/broker.
+     */
+    public Map<String, Long> metrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("openSessions", (long) sessions.size());
+        metrics.put("outboundFramesWritten", outboundStats.framesWritten.sum());
+        metrics.put("outboundSocketWrites", outboundStats.socketWrites.sum());
+        metrics.put("outboundFramesConflated", outboundStats.conflated.sum());
+        metrics.put("outboundSessionsTerminated", outboundStats.terminated.sum());
+        return metrics;
+    }
+
+    public static final class OutboundStats {
+        private final LongAdder framesWritten = new LongAdder();
+        private final LongAdder socketWrites = new LongAdder();
+        private final LongAdder conflated = new LongAdder();
+        private final LongAdder terminated = new LongAdder();
+
+        void written(int frames) {
+            framesWritten.add(frames);
+            socketWrites.increment();
+        }
+
+        void conflated() {
+            conflated.increment();
+        }
+
+        void terminated() {
+            terminated.increment();
+        }
+
+        public long conflatedCount() {
+            return conflated.sum();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Room State Sync
+ * Rebuilds the room state from full snapshots (/topic/room/{code}/state, /user/queue/state)
+ * and versioned delta patches (/topic/room/{code}/delta), or, in channels mode, from updates of
+ * single parts of it (/topic/room/{code}/queue, /timer, /poll, /members, /config).
+ */
+
+(function(window) {
+  'use strict';
+
+  /**
+   * Create a state tracker for one room subscription
+   * @param {Function} onState - Called with the complete state after every snapshot or applied delta
+   * @param {Function} onGap - Called once when a delta does not fit the held state; should request a resync
+   * @returns {Object} API with applySnapshot(state), applyDelta(delta) and applyChannel(update)
+   */
+  function create(onState, onGap) {
+    let current = null;
+    let awaitingSnapshot = false;
+    let snapshotVersion = 0; // version of the last snapshot, which every channel was set from
+    let channelVersions = {}; // channel -> version of the update it was last set from since
+    let earlyUpdates = []; // channel updates that arrived before the first snapshot
+
+    function applySnapshot(state) {
+      // Ignore snapshots older than what we already show (e.g. a resync reply overtaken by a keyframe)
+      if (current && !awaitingSnapshot && state.version < current.version) return;
+      current = state;
+      awaitingSnapshot = false;
+      snapshotVersion = state.version;
+      channelVersions = {};
+      const early = earlyUpdates;
+      earlyUpdates = [];
+      early.forEach(update => mergeChannel(update));
+      onState(current);
+    }
+
+    function applyChannel(update) {
+      if (!current) {
+        earlyUpdates.push(update);
+        return;
+      }
+      if (mergeChannel(update)) onState(current);
+    }
+
+    // Replaces the channel's fields unless the held ones are at least as new
+    function mergeChannel(update) {
+      const held = channelVersions[update.channel] !== undefined ? channelVersions[update.channel] : snapshotVersion;
+      if (update.version <= held) return false;
+      current = Object.assign({}, current, update.fields);
+      current.version = Math.max(current.version, update.version);
+      channelVersions[update.channel] = update.version;
+      return true;
+    }
+
+    function applyDelta(delta) {
+      if (awaitingSnapshot) return;
+      if (current && delta.version <= current.version) return; // already covered
+      if (!current || delta.baseVersion !== current.version) {
+        awaitingSnapshot = true;
+        onGap();
+        return;
+      }
+
+      const next = Object.assign({}, current);
+      (delta.changed || []).forEach(field => {
+        next[field] = delta[field] === undefined ? null : delta[field];
+      });
+      if (delta.queueOps) next.queue = applyOps(next.queue, delta.queueOps);
+      if (delta.memberOps) next.members = applyOps(next.members, delta.memberOps);
+      if (delta.tallyIncrements && next.pollState) {
+        const results = Object.assign({}, next.pollState.results);
+        let totalVotes = next.pollState.totalVotes || 0;
+        Object.entries(delta.tallyIncrements).forEach(([option, increment]) => {
+          results[option] = (results[option] || 0) + increment;
+          totalVotes += increment;
+        });
+        next.pollState = Object.assign({}, next.pollState, { results, totalVotes });
+      }
+      next.version = delta.version;
+
+      current = next;
+      onState(current);
+    }
+
+    return { applySnapshot, applyDelta, applyChannel };
+  }
+
+  function applyOps(list, ops) {
+    const result = (list || []).slice();
+    ops.forEach(op => {
+      if (op.op === 'remove') {
+        result.splice(op.index, 1);
+      } else if (op.op === 'insert') {
+        result.splice(op.index, 0, op.value);
+      }
+    });
+    return result;
+  }
+
+  window.RoomStateSync = { create };
+
+})(window);
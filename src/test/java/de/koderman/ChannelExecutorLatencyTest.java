@@ -0,0 +1,82 @@
+package de.koderman;
+
+import de.koderman.config.ChannelExecutors;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmark of message latency through a STOMP channel on Spring's default platform-thread
+ * pool against the virtual-thread pool used with spring.threads.virtual.enabled=true.
+ * Handlers block briefly, like one waiting for a busy room or a socket write. Depends on the
+ * machine's timing, so it only runs with ./gradlew benchmark.
+ */
+@Tag("benchmark")
+class ChannelExecutorLatencyTest {
+    private static final long HANDLER_BLOCK_MS = 5;
+
+    @Test
+    void virtualThreadsKeepLatencyLowWhenHandlersBlock() throws Exception {
+        int platformThreads = Runtime.getRuntime().availableProcessors() * 2;
+        int messages = platformThreads * 10; // Ten rounds of blocked handlers for the platform pool
+
+        ThreadPoolTaskExecutor platform = new ThreadPoolTaskExecutor();
+        platform.setCorePoolSize(platformThreads); // What Spring configures for the channels by default
+        platform.setThreadNamePrefix("bench-platform-");
+        platform.initialize();
+        ThreadPoolTaskExecutor virtual = ChannelExecutors.virtual("bench-virtual-");
+        virtual.initialize();
+        try {
+            long[] platformMicros = run(platform, messages);
+            long[] virtualMicros = run(virtual, messages);
+
+            System.out.printf("%d messages, handlers blocking %d ms%n", messages, HANDLER_BLOCK_MS);
+            System.out.printf("platform (%d threads): %s%n", platformThreads, percentiles(platformMicros));
+            System.out.printf("virtual:               %s%n", percentiles(virtualMicros));
+            assertTrue(percentile(virtualMicros, 99) < percentile(platformMicros, 99));
+        } finally {
+            platform.shutdown();
+            virtual.shutdown();
+        }
+    }
+
+    // Sends all messages at once and returns each one's latency until its handler finished, sorted
+    private static long[] run(ThreadPoolTaskExecutor executor, int messages) throws InterruptedException {
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel(executor);
+        long[] micros = new long[messages];
+        CountDownLatch handled = new CountDownLatch(messages);
+        channel.subscribe(message -> {
+            try {
+                Thread.sleep(HANDLER_BLOCK_MS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            long[] sent = (long[]) message.getPayload();
+            micros[(int) sent[0]] = (System.nanoTime() - sent[1]) / 1000;
+            handled.countDown();
+        });
+        for (int i = 0; i < messages; i++) {
+            channel.send(MessageBuilder.withPayload(new long[] {i, System.nanoTime()}).build());
+        }
+        assertTrue(handled.await(30, TimeUnit.SECONDS));
+        Arrays.sort(micros);
+        return micros;
+    }
+
+    private static String percentiles(long[] sortedMicros) {
+        return String.format("p50 %d us, p95 %d us, p99 %d us, max %d us", percentile(sortedMicros, 50),
+                percentile(sortedMicros, 95), percentile(sortedMicros, 99), sortedMicros[sortedMicros.length - 1]);
+    }
+
+    private static long percentile(long[] sortedMicros, int percent) {
+        return sortedMicros[Math.min(sortedMicros.length - 1, sortedMicros.length * percent / 100)];
+    }
+}
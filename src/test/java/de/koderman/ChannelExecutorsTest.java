@@ -0,0 +1,89 @@
+package de.koderman;
+
+import de.koderman.config.ChannelExecutors;
+import org.apache.commons.logging.LogFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.OrderedMessageChannelDecorator;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelExecutorsTest {
+
+    private ThreadPoolTaskExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = ChannelExecutors.virtual("test-virtual-");
+        executor.initialize();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void handlersRunOnVirtualThreads() throws Exception {
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel(executor);
+        AtomicBoolean virtual = new AtomicBoolean();
+        CountDownLatch handled = new CountDownLatch(1);
+        channel.subscribe(message -> {
+            virtual.set(Thread.currentThread().isVirtual());
+            handled.countDown();
+        });
+
+        channel.send(message("session-a", 0));
+
+        assertTrue(handled.await(2, TimeUnit.SECONDS));
+        assertTrue(virtual.get());
+    }
+
+    @Test
+    void aSessionsMessagesKeepTheirOrderWhenTheChannelPreservesIt() throws Exception {
+        // What setPreserveReceiveOrder and setPreservePublishOrder set up around the channel
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel(executor);
+        OrderedMessageChannelDecorator.configureInterceptor(channel, true);
+        OrderedMessageChannelDecorator ordered = new OrderedMessageChannelDecorator(channel, LogFactory.getLog(getClass()));
+        int messages = 200;
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(messages);
+        channel.subscribe(message -> {
+            int index = (Integer) message.getPayload();
+            if (index % 10 == 0) {
+                Thread.yield(); // Gives later messages every chance to overtake
+            }
+            handled.add(index);
+            done.countDown();
+        });
+
+        for (int i = 0; i < messages; i++) {
+            ordered.send(message("session-a", i));
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < messages; i++) {
+            assertEquals(i, handled.get(i));
+        }
+    }
+
+    private static Message<Integer> message(String sessionId, int payload) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        return MessageBuilder.createMessage(payload, headers.getMessageHeaders());
+    }
+}
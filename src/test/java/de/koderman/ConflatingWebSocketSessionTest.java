@@ -0,0 +1,111 @@
+package de.koderman;
+
+import de.koderman.infrastructure.ConflatingWebSocketSession;
+import de.koderman.infrastructure.WebSocketSessionRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ConflatingWebSocketSessionTest {
+
+    @Test
+    void aSlowClientGetsOnlyTheLatestStateButEveryDelta() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch bothWritten = new CountDownLatch(2);
+        List<String> written = new ArrayList<>();
+        WebSocketSession socket = socket();
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await(2, TimeUnit.SECONDS); // The first write is stuck on a slow client
+            synchronized (written) {
+                written.add(((TextMessage) invocation.getArgument(0)).getPayload());
+            }
+            bothWritten.countDown();
+            return null;
+        }).when(socket).sendMessage(any());
+        WebSocketSessionRegistry.OutboundStats stats = new WebSocketSessionRegistry().outboundStats();
+        ConflatingWebSocketSession session = new ConflatingWebSocketSession(socket, 10_000, 512 * 1024, stats);
+
+        session.sendMessage(frame("/topic/room/TEST/state", "sub-0", "{\"version\":1}"));
+        assertTrue(writing.await(2, TimeUnit.SECONDS));
+        session.sendMessage(frame("/topic/room/TEST/state", "sub-0", "{\"version\":2}"));
+        session.sendMessage(frame("/topic/room/TEST/delta", "sub-1", "{\"version\":2}"));
+        session.sendMessage(frame("/topic/room/TEST/state", "sub-0", "{\"version\":3}"));
+        session.sendMessage(frame("/topic/room/TEST/delta", "sub-1", "{\"version\":3}"));
+        session.sendMessage(frame("/topic/room/TEST/state", "sub-0", "{\"version\":4}"));
+        release.countDown();
+
+        assertTrue(bothWritten.await(2, TimeUnit.SECONDS));
+        verify(socket, times(2)).sendMessage(any());
+        String received;
+        synchronized (written) {
+            received = String.join("", written);
+        }
+        List<String> frames = List.of(received.split("\0"));
+        assertEquals(4, frames.size());
+        assertTrue(frames.get(0).endsWith("{\"version\":1}"));
+        // The newest state took the place of the first queued one, the deltas kept theirs
+        assertTrue(frames.get(1).contains("destination:/topic/room/TEST/state") && frames.get(1).endsWith("{\"version\":4}"));
+        assertTrue(frames.get(2).contains("destination:/topic/room/TEST/delta") && frames.get(2).endsWith("{\"version\":2}"));
+        assertTrue(frames.get(3).contains("destination:/topic/room/TEST/delta") && frames.get(3).endsWith("{\"version\":3}"));
+        assertEquals(2, stats.conflatedCount());
+    }
+
+    @Test
+    void aBacklogOverTheBufferLimitClosesTheSession() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        WebSocketSession socket = socket();
+        doAnswer(invocation -> release.await(2, TimeUnit.SECONDS)).when(socket).sendMessage(any());
+        ConflatingWebSocketSession session = new ConflatingWebSocketSession(socket, 10_000, 1024,
+                new WebSocketSessionRegistry().outboundStats());
+
+        try {
+            for (int i = 0; i < 100; i++) {
+                session.sendMessage(frame("/topic/room/TEST/delta", "sub-1", "{\"version\":" + i + "}"));
+            }
+            verify(socket).close(CloseStatus.SESSION_NOT_RELIABLE);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void closingWritesWhatIsStillQueuedFirst() throws Exception {
+        WebSocketSession socket = socket();
+        ConflatingWebSocketSession session = new ConflatingWebSocketSession(socket, 10_000, 512 * 1024,
+                new WebSocketSessionRegistry().outboundStats());
+
+        session.sendMessage(new TextMessage("ERROR\nmessage:bad frame\n\n\0"));
+        session.close(CloseStatus.PROTOCOL_ERROR);
+
+        ArgumentCaptor<TextMessage> sent = ArgumentCaptor.forClass(TextMessage.class);
+        verify(socket, atLeastOnce()).sendMessage(sent.capture());
+        assertTrue(sent.getAllValues().stream().anyMatch(message -> message.getPayload().startsWith("ERROR\n")));
+        verify(socket).close(CloseStatus.PROTOCOL_ERROR);
+    }
+
+    private static WebSocketSession socket() {
+        WebSocketSession socket = mock(WebSocketSession.class);
+        when(socket.getId()).thenReturn("session-a");
+        when(socket.isOpen()).thenReturn(true);
+        return socket;
+    }
+
+    private static TextMessage frame(String destination, String subscriptionId, String json) {
+        return new TextMessage("MESSAGE\nsubscription:" + subscriptionId + "\ndestination:" + destination
+                + "\ncontent-type:application/json\n\n" + json + "\0");
+    }
+}
@@ -1,21 +1,39 @@
 package de.koderman;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import de.koderman.domain.Join;
 import de.koderman.domain.RequestSpeak;
 import de.koderman.domain.Room;
 import de.koderman.domain.RoomMember;
 import de.koderman.domain.RoomRepository;
 import de.koderman.domain.State;
+import de.koderman.domain.StateDelta;
+import de.koderman.domain.TimerCtrl;
+import de.koderman.domain.Withdraw;
 import de.koderman.infrastructure.MeetingController;
+import de.koderman.infrastructure.RoomBroadcaster;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 class MeetingControllerPresenceTest {
@@ -24,7 +42,7 @@ class MeetingControllerPresenceTest {
     void joinAndRequestTrackMembersBySessionAndReplaceNames() {
         SimpMessagingTemplate broker = mock(SimpMessagingTemplate.class);
         RoomRepository repository = new RoomRepository();
-        MeetingController controller = new MeetingController(broker, repository);
+        MeetingController controller = new MeetingController(broker, repository, new RoomBroadcaster(broker, repository, new ObjectMapper()));
         repository.createRoom("TEST");
 
         StompHeaderAccessor headerAccessor = mock(StompHeaderAccessor.class);
@@ -47,7 +65,7 @@ class MeetingControllerPresenceTest {
     void chairSessionRequestAppendsProxyMembersAndWithdrawRemovesRequestedName() {
         SimpMessagingTemplate broker = mock(SimpMessagingTemplate.class);
         RoomRepository repository = new RoomRepository();
-        MeetingController controller = new MeetingController(broker, repository);
+        MeetingController controller = new MeetingController(broker, repository, new RoomBroadcaster(broker, repository, new ObjectMapper()));
         repository.createRoom("TEST");
 
         StompHeaderAccessor headerAccessor = mock(StompHeaderAccessor.class);
@@ -65,7 +83,7 @@ class MeetingControllerPresenceTest {
         assertEquals("Ben", queuedState.members().get(2).name());
         assertEquals(2, queuedState.queue().size());
 
-        controller.withdraw("TEST", new de.koderman.domain.Withdraw("Ada"));
+        controller.withdraw("TEST", new de.koderman.domain.Withdraw("Ada"), headerAccessor);
 
         State withdrawnState = repository.getByCodeOrThrow("TEST").snapshot();
 
@@ -77,10 +95,10 @@ class MeetingControllerPresenceTest {
     }
 
     @Test
-    void disconnectRemovesMemberAndBroadcastsUpdatedState() {
+    void disconnectRemovesMemberAndBroadcastsUpdatedState() throws Exception {
         SimpMessagingTemplate broker = mock(SimpMessagingTemplate.class);
         RoomRepository repository = new RoomRepository();
-        MeetingController controller = new MeetingController(broker, repository);
+        MeetingController controller = new MeetingController(broker, repository, new RoomBroadcaster(broker, repository, new ObjectMapper()));
         Room room = repository.createRoom("TEST");
 
         StompHeaderAccessor headerAccessor = mock(StompHeaderAccessor.class);
@@ -96,6 +114,81 @@ class MeetingControllerPresenceTest {
         State state = room.snapshot();
 
         assertTrue(state.members().isEmpty());
-        verify(broker).convertAndSend("/topic/room/TEST/state", state);
+        ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(broker, atLeastOnce()).send(eq("/topic/room/TEST/state"), sent.capture());
+        assertEquals(state, new ObjectMapper().readValue((byte[]) sent.getValue().getPayload(), State.class));
+    }
+
+    @Test
+    void joinedSessionsReachTheirRoomAndFollowARecreatedCode() {
+        SimpMessagingTemplate broker = mock(SimpMessagingTemplate.class);
+        RoomRepository repository = new RoomRepository();
+        MeetingController controller = new MeetingController(broker, repository, new RoomBroadcaster(broker, repository, new ObjectMapper()));
+        Room room = repository.createRoom("TEST");
+
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.create(StompCommand.SEND);
+        headerAccessor.setSessionId("session-a");
+        headerAccessor.setSessionAttributes(new ConcurrentHashMap<>());
+
+        controller.join("TEST", new Join("Ada"), headerAccessor);
+        controller.request("test", new RequestSpeak("Ada"), headerAccessor);
+        assertEquals("Ada", room.snapshot().queue().get(0).name());
+
+        repository.destroyRoom("TEST");
+        Room recreated = repository.createRoom("TEST");
+        controller.request("TEST", new RequestSpeak("Ada"), headerAccessor);
+        assertEquals("Ada", recreated.snapshot().queue().get(0).name());
+    }
+
+    @Test
+    void laterJoinsSendTheStateToTheNewcomerAndOnlyAMemberDeltaToTheRoom() throws Exception {
+        SimpMessagingTemplate broker = mock(SimpMessagingTemplate.class);
+        RoomRepository repository = new RoomRepository();
+        MeetingController controller = new MeetingController(broker, repository, new RoomBroadcaster(broker, repository, new ObjectMapper()));
+        repository.createRoom("TEST");
+
+        for (String sessionId : List.of("session-a", "session-b", "session-c")) {
+            StompHeaderAccessor headerAccessor = mock(StompHeaderAccessor.class);
+            when(headerAccessor.getSessionId()).thenReturn(sessionId);
+            controller.join("TEST", new Join("Anonymous"), headerAccessor);
+        }
+
+        // Only the first join, with nothing published yet, sends the room a full state
+        verify(broker, times(1)).send(eq("/topic/room/TEST/state"), any(Message.class));
+        ArgumentCaptor<Message<?>> snapshot = ArgumentCaptor.forClass(Message.class);
+        verify(broker).send(eq("/user/session-c/queue/state"), snapshot.capture());
+        State received = new ObjectMapper().readValue((byte[]) snapshot.getValue().getPayload(), State.class);
+        assertEquals(2, received.members().size());
+
+        ArgumentCaptor<StateDelta> deltas = ArgumentCaptor.forClass(StateDelta.class);
+        verify(broker, times(2)).convertAndSend(eq("/topic/room/TEST/delta"), deltas.capture());
+        StateDelta last = deltas.getValue();
+        assertTrue(last.isMembersOnly());
+        assertEquals(1, last.memberOps().size());
+        assertEquals("session-c", last.memberOps().get(0).value().sessionId());
+        assertEquals(received.version(), last.baseVersion());
+    }
+
+    @Test
+    void commandsThatChangeNothingAreNotBroadcast() {
+        SimpMessagingTemplate broker = mock(SimpMessagingTemplate.class);
+        RoomRepository repository = new RoomRepository();
+        MeetingController controller = new MeetingController(broker, repository, new RoomBroadcaster(broker, repository, new ObjectMapper()));
+        repository.createRoom("TEST");
+        StompHeaderAccessor chair = mock(StompHeaderAccessor.class);
+        when(chair.getSessionId()).thenReturn("chair-session");
+        StompHeaderAccessor participant = mock(StompHeaderAccessor.class);
+        when(participant.getSessionId()).thenReturn("session-a");
+        controller.join("TEST", new Join("Chair"), chair);
+        controller.request("TEST", new RequestSpeak("Ada"), participant);
+        reset(broker);
+
+        controller.request("TEST", new RequestSpeak("Ada"), participant);
+        controller.withdraw("TEST", new Withdraw("Nobody"), participant);
+        controller.timer("TEST", new TimerCtrl("start"), chair);
+        controller.navigateAgenda("TEST", Map.of("direction", "next"), chair);
+        controller.cancelPoll("TEST", chair);
+
+        verifyNoInteractions(broker);
     }
 }
\ No newline at end of file
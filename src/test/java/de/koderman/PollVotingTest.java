@@ -0,0 +1,139 @@
+package de.koderman;
+
+import de.koderman.domain.PollState;
+import de.koderman.domain.Room;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PollVotingTest {
+
+    private Room room;
+
+    @BeforeEach
+    void setUp() {
+        room = new Room("TEST");
+        room.assumeChairRole("chair");
+    }
+
+    @Test
+    void resultsKeepTheirOptionKeys() {
+        room.startPoll("chair", "Agree?", "GRADIENTS", null, null);
+        assertEquals(List.of("OPT_1", "OPT_2", "OPT_3", "OPT_4", "OPT_5", "OPT_6", "OPT_7", "OPT_8"),
+                List.copyOf(poll().results().keySet()));
+
+        room.startPoll("chair", "Lunch?", "MULTISELECT", List.of("Pizza", "Sushi", "Salad"), null);
+        assertEquals(Map.of("OPT_0", 0, "OPT_1", 0, "OPT_2", 0), poll().results());
+
+        room.startPoll("chair", "Lunch?", "YES_NO", null, null);
+        assertEquals(Map.of("YES", 0, "NO", 0), poll().results());
+    }
+
+    @Test
+    void onlyKeysOfTheRunningPollAreAccepted() {
+        room.startPoll("chair", "Agree?", "GRADIENTS", null, null);
+
+        assertFalse(room.castVote("a", "OPT_0"));
+        assertFalse(room.castVote("a", "OPT_9"));
+        assertFalse(room.castVote("a", "OPT_01"));
+        assertFalse(room.castVote("a", "OPT_"));
+        assertFalse(room.castVote("a", "YES"));
+        assertTrue(room.castVote("a", "OPT_8"));
+        assertEquals(1, poll().results().get("OPT_8"));
+    }
+
+    @Test
+    void changingTheVoteMovesItAndKeepsTheTotal() {
+        room.startPoll("chair", "Lunch?", "YES_NO", null, null);
+
+        room.castVote("a", "YES");
+        room.castVote("b", "YES");
+        room.castVote("a", "NO");
+        room.castVote("a", "NO");
+
+        assertEquals(Map.of("YES", 1, "NO", 1), poll().results());
+        assertEquals(2, poll().totalVotes());
+    }
+
+    @Test
+    void concurrentVoteChangesCountEachSessionOnce() throws Exception {
+        room.startPoll("chair", "Agree?", "GRADIENTS", null, null);
+        int voters = 8;
+        int sessions = 200;
+
+        ExecutorService pool = Executors.newFixedThreadPool(voters);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> votes = new ArrayList<>();
+        for (int v = 0; v < voters; v++) {
+            int voter = v;
+            votes.add(pool.submit(() -> {
+                start.await();
+                // Every voter changes the vote of the same sessions, last one to apply wins
+                for (int i = 0; i < sessions; i++) {
+                    assertTrue(room.castVote("session-" + i, "OPT_" + (1 + (i + voter) % 8)));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> vote : votes) {
+            vote.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(sessions, poll().totalVotes());
+        assertEquals(sessions, poll().results().values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void votesAfterTheEndAreRejectedAndResultsStayFrozen() {
+        room.startPoll("chair", "Lunch?", "YES_NO", null, null);
+        assertTrue(room.castVote("a", "YES"));
+        room.endPoll("chair");
+
+        assertFalse(room.castVote("b", "NO"));
+        assertEquals(Map.of("YES", 1, "NO", 0), poll().results());
+        assertEquals(1, poll().lastResults().totalVotes());
+    }
+
+    @Test
+    void dotVotesStackUpToTheLimitAndCanBeTakenBack() {
+        room.startPoll("chair", "Priorities", "DOT_VOTING", List.of("A", "B"), 3);
+
+        assertTrue(room.castVote("a", "OPT_0"));
+        assertTrue(room.castVote("a", "OPT_0"));
+        assertTrue(room.castVote("a", "OPT_1"));
+        assertFalse(room.castVote("a", "OPT_1"), "no dots left");
+        assertTrue(room.castVote("a", "OPT_0_DOWN"));
+        assertTrue(room.castVote("a", "OPT_1"));
+        assertFalse(room.castVote("b", "OPT_1_DOWN"), "nothing to take back");
+
+        assertEquals(Map.of("OPT_0", 1, "OPT_1", 2), poll().results());
+        assertEquals(3, poll().totalVotes());
+    }
+
+    @Test
+    void multipleSelectionTogglesWithinTheLimit() {
+        room.startPoll("chair", "Pick two", "MULTISELECT_MULTIPLE", List.of("A", "B", "C"), 2);
+
+        assertTrue(room.castVote("a", "OPT_0"));
+        assertTrue(room.castVote("a", "OPT_1"));
+        assertFalse(room.castVote("a", "OPT_2"), "limit reached");
+        assertTrue(room.castVote("a", "OPT_0"), "toggles off");
+        assertTrue(room.castVote("a", "OPT_2"));
+
+        assertEquals(Map.of("OPT_0", 0, "OPT_1", 1, "OPT_2", 1), poll().results());
+        room.endPoll("chair");
+        assertEquals(2, room.snapshot().pollState().lastResults().totalVotes());
+    }
+
+    private PollState poll() {
+        return room.snapshot().pollState();
+    }
+}
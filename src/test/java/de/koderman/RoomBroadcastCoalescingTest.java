@@ -0,0 +1,111 @@
+package de.koderman;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.koderman.domain.Room;
+import de.koderman.domain.RoomRepository;
+import de.koderman.domain.State;
+import de.koderman.infrastructure.RoomBroadcaster;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.lang.reflect.Field;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RoomBroadcastCoalescingTest {
+
+    private SimpMessagingTemplate broker;
+    private RoomRepository repository;
+    private RoomBroadcaster broadcaster;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        broker = mock(SimpMessagingTemplate.class);
+        repository = new RoomRepository();
+        broadcaster = new RoomBroadcaster(broker, repository, new ObjectMapper());
+        Field windowField = RoomBroadcaster.class.getDeclaredField("coalesceWindowMs");
+        windowField.setAccessible(true);
+        windowField.setLong(broadcaster, 250);
+    }
+
+    @AfterEach
+    void tearDown() {
+        broadcaster.shutdown();
+    }
+
+    @Test
+    void burstOfChangesIsSentOnceWithTheLatestState() throws Exception {
+        Room room = repository.createRoom("TEST");
+        room.assumeChairRole("chair");
+        room.startPoll("chair", "Lunch?", "YES_NO", null, null);
+
+        for (int i = 0; i < 200; i++) {
+            room.castVote("session-" + i, "YES");
+            broadcaster.publish(room);
+        }
+
+        ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(broker, timeout(2000).times(1)).send(eq("/topic/room/TEST/state"), sent.capture());
+        assertEquals(200, decode(sent.getValue()).pollState().totalVotes());
+    }
+
+    @Test
+    void changesAfterAFlushGetATrailingFlush() throws Exception {
+        Room room = repository.createRoom("TEST");
+
+        room.upsertMember("session-a", "Ada");
+        broadcaster.publish(room);
+        verify(broker, timeout(2000).times(1)).send(eq("/topic/room/TEST/state"), any(Message.class));
+
+        room.upsertMember("session-b", "Ben");
+        broadcaster.publish(room);
+
+        ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(broker, timeout(2000).times(2)).send(eq("/topic/room/TEST/state"), sent.capture());
+        assertEquals(2, decode(sent.getValue()).members().size());
+    }
+
+    @Test
+    void publishNowSendsImmediatelyAndAbsorbsThePendingFlush() throws Exception {
+        Room room = repository.createRoom("TEST");
+
+        room.upsertMember("session-a", "Ada");
+        broadcaster.publish(room);
+        room.assumeChairRole("chair");
+        broadcaster.publishNow(room);
+
+        verify(broker, times(1)).send(eq("/topic/room/TEST/state"), any(Message.class));
+        Thread.sleep(600);
+        verify(broker, times(1)).send(eq("/topic/room/TEST/state"), any(Message.class));
+    }
+
+    @Test
+    void unchangedRoomReusesTheSerializedBytes() {
+        RoomBroadcaster synchronous = new RoomBroadcaster(broker, repository, new ObjectMapper());
+        Room room = repository.createRoom("TEST");
+        room.upsertMember("session-a", "Ada");
+
+        synchronous.publish(room);
+        synchronous.publish(room);
+        room.upsertMember("session-b", "Ben");
+        synchronous.publish(room);
+
+        ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(broker, times(3)).send(eq("/topic/room/TEST/state"), sent.capture());
+        assertSame(sent.getAllValues().get(0).getPayload(), sent.getAllValues().get(1).getPayload());
+        assertNotSame(sent.getAllValues().get(1).getPayload(), sent.getAllValues().get(2).getPayload());
+    }
+
+    private static State decode(Message<?> message) throws Exception {
+        return new ObjectMapper().readValue((byte[]) message.getPayload(), State.class);
+    }
+}
@@ -0,0 +1,106 @@
+package de.koderman;
+
+import de.koderman.domain.Participant;
+import de.koderman.domain.Room;
+import de.koderman.domain.State;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomConcurrentReadTest {
+
+    @Test
+    void readsDoNotWaitForABusyWriter() throws Exception {
+        Room room = new Room("TEST");
+        room.assumeChairRole("chair");
+        room.startPoll("chair", "Lunch?", "YES_NO", null, null);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        room.execute(() -> { // Simulate a writer stuck in the middle of an update
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(writing.await(2, TimeUnit.SECONDS));
+
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<State> snapshot = reader.submit(() -> {
+                assertTrue(room.isChairSession("chair"));
+                assertTrue(room.hasChair());
+                assertTrue(room.isPolling());
+                room.getVersion();
+                return room.snapshot();
+            });
+            assertEquals("ACTIVE", snapshot.get(2, TimeUnit.SECONDS).pollState().status());
+        } finally {
+            release.countDown();
+            reader.shutdownNow();
+        }
+    }
+
+    @Test
+    void readersOnlySeeConsistentStatesDuringAVoteStorm() throws Exception {
+        Room room = new Room("TEST");
+        room.assumeChairRole("chair");
+        room.startPoll("chair", "Lunch?", "YES_NO", null, null);
+        int writers = 8;
+        int votesPerWriter = 500;
+
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(writers + 2);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            readers.add(pool.submit(() -> {
+                long lastVersion = -1;
+                while (!done.get()) {
+                    State state = room.snapshot();
+                    assertTrue(state.version() >= lastVersion, "versions never go backwards");
+                    lastVersion = state.version();
+                    int sum = state.pollState().results().values().stream().mapToInt(Integer::intValue).sum();
+                    assertEquals(sum, state.pollState().totalVotes(), "total matches the tallies it was taken with");
+                    Set<String> names = new HashSet<>();
+                    state.queue().forEach(p -> assertTrue(names.add(p.name()), "no duplicate in queue"));
+                }
+            }));
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writes = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            writes.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < votesPerWriter; i++) {
+                    room.castVote("session-" + writer + "-" + i, i % 3 == 0 ? "NO" : "YES");
+                    room.addParticipantToQueue(new Participant("session-" + writer + "-" + i, "Speaker " + (i % 20), i));
+                    room.withdrawParticipant("Speaker " + ((i + 7) % 20));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> write : writes) {
+            write.get(30, TimeUnit.SECONDS);
+        }
+        done.set(true);
+        for (Future<?> read : readers) {
+            read.get(5, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        State end = room.snapshot();
+        assertEquals(writers * votesPerWriter, end.pollState().totalVotes());
+        assertEquals(writers * ((votesPerWriter + 2) / 3), end.pollState().results().get("NO"));
+    }
+}
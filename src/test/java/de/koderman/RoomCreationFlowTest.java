@@ -1,5 +1,6 @@
 package de.koderman;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -23,7 +24,7 @@ class RoomCreationFlowTest {
     void setUp() {
         SimpMessagingTemplate mockBroker = mock(SimpMessagingTemplate.class);
         repository = new RoomRepository();
-        controller = new MeetingController(mockBroker, repository);
+        controller = new MeetingController(mockBroker, repository, new RoomBroadcaster(mockBroker, repository, new ObjectMapper()));
     }
 
     @Test
@@ -0,0 +1,263 @@
+package de.koderman;
+
+import de.koderman.config.ChannelExecutors;
+import de.koderman.config.RoomLaneExecutor;
+import de.koderman.domain.Room;
+import de.koderman.infrastructure.RoomRouting;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.annotation.support.SimpAnnotationMethodMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class RoomLaneExecutorTest {
+
+    private RoomLaneExecutor executor;
+    private ExecutorSubscribableChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        start(false, 1);
+    }
+
+    private void start(boolean priorityLanes, int lowPriorityCapacity) {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        executor = ChannelExecutors.roomLanes(4, false, "test-inbound-");
+        executor.setPriorityLanes(priorityLanes, lowPriorityCapacity);
+        executor.initialize();
+        channel = new ExecutorSubscribableChannel(executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void messagesForOneRoomAreHandledInArrivalOrderOnOneThread() throws Exception {
+        int messages = 500;
+        List<Integer> handled = new ArrayList<>(); // Not synchronized: the lane is the only writer
+        Map<String, Boolean> threads = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(messages);
+        channel.subscribe(roomHandler(message -> {
+            threads.put(Thread.currentThread().getName(), true);
+            handled.add((Integer) message.getPayload());
+            done.countDown();
+        }));
+
+        String[] spellings = {"ABCD", "abcd", "AbCd"}; // All address the same room
+        for (int i = 0; i < messages; i++) {
+            channel.send(message("/app/room/" + spellings[i % spellings.length] + "/poll/vote", i));
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, threads.size());
+        for (int i = 0; i < messages; i++) {
+            assertEquals(i, handled.get(i));
+        }
+    }
+
+    @Test
+    void aBusyRoomDoesNotHoldUpMessagesOutsideItsLane() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch handled = new CountDownLatch(1);
+        channel.subscribe(roomHandler(message -> {
+            if ("/app/room/BUSY/next".equals(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                handled.countDown();
+            }
+        }));
+
+        try {
+            channel.send(message("/app/room/BUSY/next", 0));
+            channel.send(message("/app/heartbeat", 1)); // Not a room message, runs on the pool
+            assertTrue(handled.await(2, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void chairCommandsRunAheadOfQueuedVotes() throws Exception {
+        start(true, 1000);
+        Room room = new Room("ABCD");
+        room.assumeChairRole("chair");
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(52);
+        channel.subscribe(roomHandler(message -> {
+            if ((Integer) message.getPayload() == 0) {
+                running.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS); // Holds the lane while the rest queues up
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            handled.add(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+            done.countDown();
+        }));
+
+        channel.send(message("/app/room/ABCD/poll/vote", 0, "voter-0", room));
+        assertTrue(running.await(2, TimeUnit.SECONDS));
+        for (int i = 1; i <= 50; i++) {
+            channel.send(message("/app/room/ABCD/poll/vote", i, "voter-" + i, room));
+        }
+        channel.send(message("/app/room/ABCD/poll/end", 51, "chair", room));
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("voter-0", handled.get(0));
+        assertEquals("chair", handled.get(1));
+        Map<String, Long> metrics = executor.metrics();
+        assertEquals(1L, metrics.get("highHandled"));
+        assertEquals(51L, metrics.get("lowHandled"));
+        assertTrue(metrics.get("lowWaitMaxMicros") >= metrics.get("highWaitMaxMicros"));
+    }
+
+    @Test
+    void aFullLowPriorityLaneDropsParticipantMessagesButNotTheChairs() throws Exception {
+        start(true, 2);
+        List<String> dropped = Collections.synchronizedList(new ArrayList<>());
+        executor.setDroppedMessageHandler((roomCode, message) ->
+                dropped.add(roomCode + ":" + SimpMessageHeaderAccessor.getSessionId(message.getHeaders())));
+        Room room = new Room("ABCD");
+        room.assumeChairRole("chair");
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch chairHandled = new CountDownLatch(1);
+        channel.subscribe(roomHandler(message -> {
+            if ("chair".equals(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))) {
+                chairHandled.countDown();
+                return;
+            }
+            running.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        try {
+            channel.send(message("/app/room/ABCD/request", 0, "voter-0", room));
+            assertTrue(running.await(2, TimeUnit.SECONDS)); // Off the queue, holding the lane
+            channel.send(message("/app/room/ABCD/request", 1, "voter-1", room));
+            channel.send(message("/app/room/ABCD/request", 2, "voter-2", room));
+            assertTrue(channel.send(message("/app/room/ABCD/request", 3, "voter-3", room))); // No error for the client
+            channel.send(message("/app/room/ABCD/next", 4, "chair", room));
+            assertEquals(List.of("ABCD:voter-3"), dropped);
+            assertEquals(1L, executor.metrics().get("lowDropped"));
+        } finally {
+            release.countDown();
+        }
+        assertTrue(chairHandled.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void aMessageWithSeveralSubscribersIsQueuedOrDroppedOnce() throws Exception {
+        start(true, 1);
+        List<String> dropped = Collections.synchronizedList(new ArrayList<>());
+        executor.setDroppedMessageHandler((roomCode, message) ->
+                dropped.add(SimpMessageHeaderAccessor.getSessionId(message.getHeaders())));
+        Room room = new Room("ABCD");
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch brokerHandled = new CountDownLatch(3);
+        channel.subscribe(roomHandler(message -> {
+            running.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        channel.subscribe(message -> brokerHandled.countDown()); // Like the broker, which ignores /app messages
+
+        try {
+            channel.send(message("/app/room/ABCD/request", 0, "voter-0", room));
+            assertTrue(running.await(2, TimeUnit.SECONDS));
+            channel.send(message("/app/room/ABCD/request", 1, "voter-1", room));
+            channel.send(message("/app/room/ABCD/request", 2, "voter-2", room));
+            assertTrue(brokerHandled.await(2, TimeUnit.SECONDS)); // On the pool, not behind the busy lane
+            assertEquals(List.of("voter-2"), dropped);
+            assertEquals(1L, executor.metrics().get("lowDropped"));
+            assertEquals(1L, executor.metrics().get("lowQueued"));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void aHandlerThrowingAnErrorDoesNotStopItsLane() throws Exception {
+        CountDownLatch handled = new CountDownLatch(1);
+        channel.subscribe(roomHandler(message -> {
+            if ((Integer) message.getPayload() == 0) {
+                throw new StackOverflowError();
+            }
+            handled.countDown();
+        }));
+
+        channel.send(message("/app/room/ABCD/next", 0));
+        channel.send(message("/app/room/ABCD/next", 1));
+
+        assertTrue(handled.await(2, TimeUnit.SECONDS));
+    }
+
+    // Only tasks for the channel's @MessageMapping handler take a lane
+    private static MessageHandler roomHandler(MessageHandler handler) {
+        return new SimpAnnotationMethodMessageHandler(mock(SubscribableChannel.class), mock(MessageChannel.class),
+                mock(SimpMessageSendingOperations.class)) {
+            @Override
+            public void handleMessage(@NonNull Message<?> message) {
+                handler.handleMessage(message);
+            }
+        };
+    }
+
+    private static Message<Integer> message(String destination, int payload) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setDestination(destination);
+        return MessageBuilder.createMessage(payload, headers.getMessageHeaders());
+    }
+
+    // A message from a session that joined the room, as MeetingController binds it
+    private static Message<Integer> message(String destination, int payload, String sessionId, Room room) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setDestination(destination);
+        headers.setSessionId(sessionId);
+        Map<String, Object> attributes = new HashMap<>();
+        RoomRouting.bindRoom(attributes, room);
+        headers.setSessionAttributes(attributes);
+        return MessageBuilder.createMessage(payload, headers.getMessageHeaders());
+    }
+}
@@ -69,9 +69,9 @@ class RoomLimitDemonstrationTest {
         maxRoomsField.setAccessible(true);
         int maxRooms = maxRoomsField.getInt(repository);
         
-        // Manually fill to capacity (simulate being at max)
+        // Fill to capacity (simulate being at max); the repository counts rooms as they are created
         for (int i = 0; i < maxRooms - 2; i++) {
-            roomsByCode.put("FILL" + i, new Room("FILL" + i));
+            repository.createRoom("FILL" + i);
         }
         
         // Verify we're at capacity
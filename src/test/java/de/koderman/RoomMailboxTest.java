@@ -0,0 +1,130 @@
+package de.koderman;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.koderman.domain.*;
+import de.koderman.infrastructure.MeetingController;
+import de.koderman.infrastructure.RoomBroadcaster;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RoomMailboxTest {
+
+    @Test
+    void directCallsWaitForQueuedCommandsAndKeepTheirOrder() throws Exception {
+        Room room = new Room("TEST");
+        CountDownLatch release = new CountDownLatch(1);
+        room.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        room.execute(() -> room.addParticipantToQueue(new Participant("session-a", "Ada", 1L)));
+
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> direct = caller.submit(() -> room.addParticipantToQueue(new Participant("session-b", "Ben", 2L)));
+            assertThrows(TimeoutException.class, () -> direct.get(200, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            direct.get(2, TimeUnit.SECONDS);
+        } finally {
+            caller.shutdownNow();
+        }
+        assertEquals(List.of("Ada", "Ben"), room.snapshot().queue().stream().map(Participant::name).toList());
+    }
+
+    @Test
+    void directCallsRethrowCommandFailures() {
+        Room room = new Room("TEST");
+        room.assumeChairRole("chair");
+
+        assertThrows(ChairAccessException.class, () -> room.nextParticipant("not-the-chair"));
+        room.nextParticipant("chair"); // The mailbox keeps working after a failure
+    }
+
+    @Test
+    void actorModeQueuesCommandsAndBroadcastsFromTheMailbox() throws Exception {
+        SimpMessagingTemplate broker = mock(SimpMessagingTemplate.class);
+        RoomRepository repository = new RoomRepository();
+        MeetingController controller = new MeetingController(broker, repository, new RoomBroadcaster(broker, repository, new ObjectMapper()));
+        Field modeField = MeetingController.class.getDeclaredField("commandMode");
+        modeField.setAccessible(true);
+        modeField.set(controller, "actor");
+        Room room = repository.createRoom("TEST");
+        room.assumeChairRole("chair");
+
+        controller.next("TEST", session("participant"));
+        verify(broker, timeout(2000)).convertAndSendToUser(eq("participant"), eq("/queue/error"), any(RoomError.class));
+
+        controller.request("TEST", new RequestSpeak("Ada"), session("session-a"));
+        verify(broker, timeout(2000)).send(eq("/topic/room/TEST/state"), any(Message.class));
+        assertEquals("Ada", room.snapshot().queue().get(0).name());
+    }
+
+    @Test
+    void actorModeCountsSingleChoiceVotesWithoutQueueingThemOnTheMailbox() throws Exception {
+        SimpMessagingTemplate broker = mock(SimpMessagingTemplate.class);
+        RoomRepository repository = new RoomRepository();
+        MeetingController controller = new MeetingController(broker, repository, new RoomBroadcaster(broker, repository, new ObjectMapper()));
+        Field modeField = MeetingController.class.getDeclaredField("commandMode");
+        modeField.setAccessible(true);
+        modeField.set(controller, "actor");
+        Room room = repository.createRoom("TEST");
+        room.assumeChairRole("chair");
+        room.startPoll("chair", "Lunch?", "YES_NO", null, null);
+        CountDownLatch release = new CountDownLatch(1);
+        room.execute(() -> { // A busy mailbox
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try {
+            for (int i = 0; i < 10; i++) {
+                controller.castVote("TEST", new CastVote("YES"), session("session-" + i));
+            }
+            assertEquals(10, room.snapshot().pollState().totalVotes()); // Counted while the mailbox is blocked
+        } finally {
+            release.countDown();
+        }
+
+        room.startPoll("chair", "Topics?", "DOT_VOTING", List.of("A", "B"), 3);
+        CountDownLatch releaseAgain = new CountDownLatch(1);
+        room.execute(() -> {
+            try {
+                releaseAgain.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        controller.castVote("TEST", new CastVote("OPT_0"), session("session-0"));
+        assertEquals(0, room.snapshot().pollState().totalVotes()); // Dot votes still queue on the mailbox
+        releaseAgain.countDown();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (room.snapshot().pollState().totalVotes() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, room.snapshot().pollState().totalVotes());
+    }
+
+    private static StompHeaderAccessor session(String sessionId) {
+        StompHeaderAccessor headers = mock(StompHeaderAccessor.class);
+        when(headers.getSessionId()).thenReturn(sessionId);
+        return headers;
+    }
+}
@@ -6,6 +6,8 @@ import de.koderman.domain.RoomMember;
 import de.koderman.domain.State;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class RoomMemberPresenceTest {
@@ -99,4 +101,38 @@ class RoomMemberPresenceTest {
         assertEquals("Ava", state.queue().get(0).name());
         assertEquals("session-a", state.queue().get(0).id());
     }
+
+    @Test
+    void renamedChairKeepsItsProxiesAndTheOldNameIsFreed() {
+        Room room = new Room("TEST");
+
+        room.upsertMember("chair-session", "Chair");
+        room.addProxyMember("chair-session", "Ada");
+        room.upsertMember("chair-session", "Host");
+        room.addProxyMember("chair-session", "chair");
+        room.addProxyMember("chair-session", "ADA");
+
+        State state = room.snapshot();
+
+        assertEquals(List.of("Host", "Ada", "chair"), state.members().stream().map(RoomMember::name).toList());
+    }
+
+    @Test
+    void largeRoomJoinsAndLeavesKeepJoinOrder() {
+        Room room = new Room("TEST");
+
+        for (int i = 0; i < 5000; i++) {
+            room.upsertMember("session-" + i, "Member " + i);
+        }
+        for (int i = 0; i < 5000; i += 2) {
+            room.removeMember("session-" + i);
+        }
+        room.removeMemberByName("member 1");
+
+        State state = room.snapshot();
+
+        assertEquals(2499, state.members().size());
+        assertEquals("Member 3", state.members().get(0).name());
+        assertEquals("Member 4999", state.members().get(2498).name());
+    }
 }
\ No newline at end of file
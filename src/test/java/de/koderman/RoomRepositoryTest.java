@@ -4,11 +4,18 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
 
 import de.koderman.domain.Room;
+import de.koderman.domain.RoomEvictionPolicy;
+import de.koderman.domain.RoomNotFoundException;
 import de.koderman.domain.RoomRepository;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -36,6 +43,36 @@ class RoomRepositoryTest {
         assertSame(room1, room2, "Should return the same room instance");
     }
 
+    @Test
+    void testCreateRoomWithoutCode_allocatesDistinctCodes() {
+        Set<String> codes = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            Room room = repository.createRoom();
+            assertTrue(room.getRoomCode().matches("[A-Z1-9]{4}"), room.getRoomCode());
+            assertTrue(codes.add(room.getRoomCode()), "code handed out twice: " + room.getRoomCode());
+        }
+        String destroyed = codes.iterator().next();
+        repository.destroyRoom(destroyed);
+        assertFalse(repository.exists(destroyed));
+        assertNotNull(repository.createRoom());
+    }
+
+    @Test
+    void testGetByClientCode_readsCodesAsClientsSendThem() {
+        Room room = repository.createRoom("ABOC");
+        Room other = repository.createRoom("OTHER"); // Outside the 4-character code space
+
+        assertSame(room, repository.getByClientCodeOrThrow("ABOC"));
+        assertSame(room, repository.getByClientCodeOrThrow("ab0c"));
+        assertSame(other, repository.getByClientCodeOrThrow("other"));
+        RoomNotFoundException missing = assertThrows(RoomNotFoundException.class,
+                () -> repository.getByClientCodeOrThrow("zz0z"));
+        assertEquals("ZZOZ", missing.getRoomCode());
+
+        repository.destroyRoom("ABOC");
+        assertThrows(RoomNotFoundException.class, () -> repository.getByClientCodeOrThrow("ABOC"));
+    }
+
     @Test
     void testExists_returnsTrueForExistingRoom() {
         repository.createRoom("TEST");
@@ -77,6 +114,113 @@ class RoomRepositoryTest {
         assertFalse(repository.getBySessionId("session123").isPresent());
     }
 
+    @Test
+    void testGetSessionsForRoom_followsTrackingAndDestroy() {
+        repository.createRoom("ROOM001");
+        repository.createRoom("ROOM002");
+        repository.trackSession("session1", "ROOM001");
+        repository.trackSession("session2", "ROOM001");
+        repository.trackSession("session3", "ROOM002");
+
+        repository.trackSession("session2", "ROOM002");
+        repository.untrackSession("session3");
+        assertEquals(List.of("session1"), repository.getSessionsForRoom("ROOM001"));
+        assertEquals(List.of("session2"), repository.getSessionsForRoom("ROOM002"));
+
+        repository.destroyRoom("ROOM001");
+        assertEquals(List.of(), repository.getSessionsForRoom("ROOM001"));
+        assertFalse(repository.getBySessionId("session1").isPresent());
+        assertTrue(repository.getBySessionId("session2").isPresent());
+    }
+
+    @Test
+    void testReap_keepsRoomsThatAreNotIdleLongEnough() {
+        for (int i = 0; i < 95; i++) {
+            repository.createRoom(String.format("ROOM%03d", i));
+        }
+
+        assertEquals(0, repository.reap(), "fresh rooms are not idle for reapMinIdleMinutes");
+        assertTrue(repository.exists("ROOM000"));
+    }
+
+    @Test
+    void testReap_evictsLeastRecentlyActiveRoomsDownToTarget() throws Exception {
+        Field minIdleField = RoomRepository.class.getDeclaredField("reapMinIdleMinutes");
+        minIdleField.setAccessible(true);
+        minIdleField.setLong(repository, 0); // Every room counts as idle
+        for (int i = 0; i < 95; i++) {
+            repository.createRoom(String.format("ROOM%03d", i));
+        }
+        repository.getByCode("ROOM000").get().upsertMember("session1", "Alice"); // Oldest, but active again
+
+        assertEquals(5, repository.reap(), "reaps down to 90 of maxRooms 100");
+        assertTrue(repository.exists("ROOM000"));
+        for (int i = 1; i <= 5; i++) {
+            assertFalse(repository.exists(String.format("ROOM%03d", i)));
+        }
+        assertTrue(repository.exists("ROOM006"));
+        assertEquals(0, repository.reap());
+    }
+
+    @Test
+    void testCreateRoom_atTheLimitEvictsOnlyOneRoomEvenIfMoreHaveExpired() throws Exception {
+        Field policyField = RoomRepository.class.getDeclaredField("evictionPolicy");
+        policyField.setAccessible(true);
+        policyField.set(repository, RoomEvictionPolicy.idleTtl(Duration.ZERO)); // Every room has expired
+        for (int i = 0; i < 100; i++) {
+            repository.createRoom(String.format("ROOM%03d", i));
+        }
+
+        repository.createRoom("NEWROOM");
+
+        assertTrue(repository.exists("NEWROOM"));
+        assertFalse(repository.exists("ROOM000"), "the least recently active room makes way");
+        assertTrue(repository.exists("ROOM001"), "the other expired rooms are left to the reaper");
+        assertTrue(repository.exists("ROOM099"));
+    }
+
+    @Test
+    void testLogConfiguredLimit_rejectsANonPositiveLimit() throws Exception {
+        Field maxRoomsField = RoomRepository.class.getDeclaredField("maxRooms");
+        maxRoomsField.setAccessible(true);
+        maxRoomsField.setInt(repository, 0);
+
+        assertThrows(IllegalStateException.class, () -> repository.logConfiguredLimit());
+    }
+
+    @Test
+    void testTrackSession_concurrentJoinsAndLeavesOfOneRoomKeepTheIndexConsistent() throws Exception {
+        repository.createRoom("ROOM001");
+        int threads = 8;
+        int rounds = 2000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                String sessionId = "session" + t;
+                workers.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < rounds; i++) {
+                        repository.trackSession(sessionId, "ROOM001");
+                        repository.untrackSession(sessionId);
+                    }
+                    repository.trackSession(sessionId, "ROOM001"); // Every session ends up joined
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> worker : workers) {
+                worker.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // A session added to a set that a concurrent leave had just dropped would be missing here
+        assertEquals(threads, repository.getSessionsForRoom("ROOM001").size());
+    }
+
     @Test
     void testRoomLimit_removesOldestRoomWhenLimitReached() throws Exception {
         // Get access to the MAX_ROOMS constant and roomsByCode field
@@ -196,4 +340,69 @@ class RoomRepositoryTest {
             assertTrue(repository.exists(roomCode), "Room " + roomCode + " should exist");
         }
     }
+
+    @Test
+    void testConcurrentCreationOfTheSameRooms_yieldsOneInstanceEach() throws Exception {
+        int threadCount = 8;
+        int roomCount = 50;
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Room>>> results = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                List<Room> rooms = new ArrayList<>();
+                for (int i = 0; i < roomCount; i++) {
+                    rooms.add(repository.createRoom("SAME" + i));
+                }
+                return rooms;
+            }));
+        }
+        start.countDown();
+        Set<Room> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Future<List<Room>> result : results) {
+            distinct.addAll(result.get(10, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        assertEquals(roomCount, distinct.size(), "every caller got the one instance per code");
+        for (Room room : distinct) {
+            assertSame(room, repository.getByCode(room.getRoomCode()).orElseThrow());
+        }
+    }
+
+    @Test
+    void testConcurrentCreationBeyondTheLimit_neverExceedsMaxRooms() throws Exception {
+        int threadCount = 8;
+        int roomsPerThread = 50;
+        ConcurrentHashMap<String, Room> roomsByCode = roomsByCode();
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> creators = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int thread = t;
+            creators.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < roomsPerThread; i++) {
+                    repository.createRoom(String.format("C%dR%02d", thread, i));
+                    assertTrue(roomsByCode.size() <= 100, "maxRooms is never exceeded");
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> creator : creators) {
+            creator.get(10, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(100, roomsByCode.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ConcurrentHashMap<String, Room> roomsByCode() throws Exception {
+        Field roomsByCodeField = RoomRepository.class.getDeclaredField("roomsByCode");
+        roomsByCodeField.setAccessible(true);
+        return (ConcurrentHashMap<String, Room>) roomsByCodeField.get(repository);
+    }
 }
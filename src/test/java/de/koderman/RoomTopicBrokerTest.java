@@ -0,0 +1,122 @@
+package de.koderman;
+
+import de.koderman.infrastructure.RoomTopicBroker;
+import de.koderman.infrastructure.WebSocketSessionRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class RoomTopicBrokerTest {
+
+    private WebSocketSessionRegistry sessions;
+    private RoomTopicBroker broker;
+
+    @BeforeEach
+    void setUp() {
+        sessions = new WebSocketSessionRegistry();
+        broker = new RoomTopicBroker(mock(SubscribableChannel.class), mock(MessageChannel.class),
+                mock(SubscribableChannel.class), sessions);
+        broker.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        broker.stop();
+    }
+
+    @Test
+    void roomMessagesReachOnlyTheSubscribersOfThatRoomAndChannel() throws Exception {
+        WebSocketSession ada = session("session-a");
+        WebSocketSession ben = session("session-b");
+        subscribe("session-a", "sub-0", "/topic/room/TEST/state");
+        subscribe("session-b", "sub-1", "/topic/room/TEST/error");
+        subscribe("session-b", "sub-2", "/topic/room/OTHER/state");
+
+        publish("/topic/room/TEST/state", "{\"roomCode\":\"TEST\"}");
+
+        ArgumentCaptor<TextMessage> written = ArgumentCaptor.forClass(TextMessage.class);
+        verify(ada, timeout(2000)).sendMessage(written.capture());
+        String frame = written.getValue().getPayload();
+        assertTrue(frame.startsWith("MESSAGE\nsubscription:sub-0\ndestination:/topic/room/TEST/state\n"));
+        assertTrue(frame.contains("content-type:application/json\n"));
+        assertTrue(frame.endsWith("\n\n{\"roomCode\":\"TEST\"}\0"));
+        verify(ben, never()).sendMessage(any());
+    }
+
+    @Test
+    void framesToOneSessionKeepTheirOrderAndDisconnectStopsDelivery() throws Exception {
+        WebSocketSession ada = session("session-a");
+        StringBuffer received = new StringBuffer(); // The outbox writes on its own thread, maybe in several batches
+        doAnswer(invocation -> received.append(invocation.<TextMessage>getArgument(0).getPayload()))
+                .when(ada).sendMessage(any());
+        subscribe("session-a", "sub-0", "/topic/room/TEST/delta");
+
+        for (int i = 0; i < 100; i++) {
+            publish("/topic/room/TEST/delta", "{\"version\":" + i + "}");
+        }
+
+        assertEquals(100L, broker.metrics().get("framesQueued"));
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!received.toString().contains("\"version\":99}") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        int last = -1;
+        for (String frame : received.toString().split("\0")) {
+            int version = Integer.parseInt(frame.substring(frame.indexOf("\"version\":") + 10, frame.lastIndexOf('}')));
+            assertEquals(last + 1, version);
+            last = version;
+        }
+        assertEquals(99, last);
+
+        disconnect("session-a");
+        clearInvocations(ada);
+        publish("/topic/room/TEST/delta", "{\"version\":100}");
+        verify(ada, never()).sendMessage(any());
+        assertEquals(0L, broker.metrics().get("subscriptions"));
+    }
+
+    private WebSocketSession session(String sessionId) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(sessionId);
+        when(session.isOpen()).thenReturn(true);
+        sessions.register(session);
+        return session;
+    }
+
+    private void subscribe(String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        headers.setSessionId(sessionId);
+        headers.setSubscriptionId(subscriptionId);
+        headers.setDestination(destination);
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders()));
+    }
+
+    private void disconnect(String sessionId) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT);
+        headers.setSessionId(sessionId);
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders()));
+    }
+
+    private void publish(String destination, String json) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setDestination(destination);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        broker.handleMessage(MessageBuilder.createMessage(json.getBytes(StandardCharsets.UTF_8), headers.getMessageHeaders()));
+    }
+}
@@ -0,0 +1,94 @@
+package de.koderman;
+
+import de.koderman.domain.Participant;
+import de.koderman.domain.Room;
+import de.koderman.domain.State;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpeakerQueueTest {
+
+    private Room room;
+
+    @BeforeEach
+    void setUp() {
+        room = new Room("TEST");
+        room.assumeChairRole("chair");
+    }
+
+    @Test
+    void duplicateNamesAreRejectedIgnoringCase() {
+        room.addParticipantToQueue(new Participant("a", "Ada", 1L));
+        room.addParticipantToQueue(new Participant("b", "ADA", 2L));
+        room.addParticipantToQueue(new Participant("c", "Ben", 3L));
+
+        assertEquals(List.of("Ada", "Ben"), names(room.snapshot()));
+    }
+
+    @Test
+    void sameIdReplacesTheEntryInPlace() {
+        room.addParticipantToQueue(new Participant("a", "Ada", 1L));
+        room.addParticipantToQueue(new Participant("b", "Ben", 2L));
+        room.addParticipantToQueue(new Participant("c", "Cy", 3L));
+
+        room.addParticipantToQueue(new Participant("b", "Bea", 4L));
+
+        assertEquals(List.of("Ada", "Bea", "Cy"), names(room.snapshot()));
+        room.withdrawParticipant("ben");
+        assertEquals(3, room.snapshot().queue().size(), "old name is no longer indexed");
+        room.withdrawParticipant("bea");
+        assertEquals(List.of("Ada", "Cy"), names(room.snapshot()));
+    }
+
+    @Test
+    void withdrawAndNextKeepQueueOrder() {
+        for (int i = 0; i < 40; i++) {
+            room.addParticipantToQueue(new Participant("s" + i, "Speaker " + i, i));
+        }
+
+        room.withdrawParticipant("SPEAKER 5");
+        room.nextParticipant("chair");
+        room.nextParticipant("chair");
+
+        State state = room.snapshot();
+        assertEquals("Speaker 1", state.current().entry().name());
+        assertEquals(37, state.queue().size());
+        assertEquals("Speaker 2", state.queue().get(0).name());
+        assertEquals("Speaker 6", state.queue().get(3).name());
+
+        // A withdrawn speaker can line up again at the end
+        room.addParticipantToQueue(new Participant("s5", "Speaker 5", 99L));
+        assertEquals("Speaker 5", room.snapshot().queue().get(37).name());
+    }
+
+    @Test
+    void publishedSnapshotsNeverChangeAfterwards() {
+        List<State> states = new ArrayList<>();
+        List<List<String>> expected = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            room.addParticipantToQueue(new Participant("s" + i, "Speaker " + i, i));
+            if (i % 3 == 0) {
+                room.nextParticipant("chair");
+            }
+            if (i % 7 == 0) {
+                room.withdrawParticipant("Speaker " + (i - 1));
+            }
+            State state = room.snapshot();
+            states.add(state);
+            expected.add(names(state));
+        }
+
+        for (int i = 0; i < states.size(); i++) {
+            assertEquals(expected.get(i), names(states.get(i)));
+        }
+    }
+
+    private static List<String> names(State state) {
+        return state.queue().stream().map(Participant::name).toList();
+    }
+}
@@ -0,0 +1,159 @@
+package de.koderman;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.koderman.domain.*;
+import de.koderman.infrastructure.RoomBroadcaster;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class StateDeltaTest {
+
+    @Test
+    void listDiffReconstructsTargetList() {
+        List<String> before = List.of("a", "b", "c", "d");
+
+        assertEquals(List.of("a", "b", "c", "d", "e"), apply(before, ListOp.diff(before, List.of("a", "b", "c", "d", "e"))));
+        assertEquals(List.of("a", "c", "d"), apply(before, ListOp.diff(before, List.of("a", "c", "d"))));
+        assertEquals(List.of("b", "c", "d"), apply(before, ListOp.diff(before, List.of("b", "c", "d"))));
+        assertEquals(List.of("a", "x", "c", "d"), apply(before, ListOp.diff(before, List.of("a", "x", "c", "d"))));
+        assertEquals(List.of("d", "c"), apply(before, ListOp.diff(before, List.of("d", "c"))));
+        assertEquals(1, ListOp.diff(before, List.of("a", "b", "c", "d", "e")).size(), "append is a single insert");
+    }
+
+    @Test
+    void queueAndMemberChangesBecomeOps() {
+        Room room = new Room("TEST");
+        room.upsertMember("session-a", "Ada");
+        room.addParticipantToQueue(new Participant("session-a", "Ada", 1L));
+        State base = room.snapshot();
+
+        room.upsertMember("session-b", "Ben");
+        room.addParticipantToQueue(new Participant("session-b", "Ben", 2L));
+        State next = room.snapshot();
+
+        StateDelta delta = StateDelta.between(base, next);
+
+        assertEquals(base.version(), delta.baseVersion());
+        assertEquals(next.version(), delta.version());
+        assertTrue(delta.changed().isEmpty());
+        assertEquals(List.of(ListOp.insert(1, next.queue().get(1))), delta.queueOps());
+        assertEquals(List.of(ListOp.insert(1, next.members().get(1))), delta.memberOps());
+        assertNull(delta.pollState());
+    }
+
+    @Test
+    void votesBecomeTallyIncrementsAndPollChangesShipWholePoll() {
+        Room room = new Room("TEST");
+        room.assumeChairRole("chair");
+        room.startPoll("chair", "Lunch?", "YES_NO", null, null);
+        State base = room.snapshot();
+
+        room.castVote("session-a", "YES");
+        room.castVote("session-b", "YES");
+        room.castVote("session-c", "NO");
+        StateDelta votes = StateDelta.between(base, room.snapshot());
+
+        assertEquals(Map.of("YES", 2, "NO", 1), votes.tallyIncrements());
+        assertTrue(votes.changed().isEmpty());
+
+        State voted = room.snapshot();
+        room.endPoll("chair");
+        StateDelta ended = StateDelta.between(voted, room.snapshot());
+
+        assertEquals(List.of("pollState"), ended.changed());
+        assertEquals("ENDED", ended.pollState().status());
+        assertNull(ended.tallyIncrements());
+    }
+
+    @Test
+    void unchangedStateGivesEmptyDelta() {
+        Room room = new Room("TEST");
+        room.upsertMember("session-a", "Ada");
+
+        assertTrue(StateDelta.between(room.snapshot(), room.snapshot()).isEmpty());
+    }
+
+    @Test
+    void deltaModeSendsKeyframeThenPatches() throws Exception {
+        SimpMessagingTemplate broker = mock(SimpMessagingTemplate.class);
+        RoomRepository repository = new RoomRepository();
+        RoomBroadcaster broadcaster = new RoomBroadcaster(broker, repository, new ObjectMapper());
+        Field modeField = RoomBroadcaster.class.getDeclaredField("mode");
+        modeField.setAccessible(true);
+        modeField.set(broadcaster, "delta");
+        Room room = repository.createRoom("TEST");
+
+        room.upsertMember("session-a", "Ada");
+        broadcaster.publish(room);
+        room.upsertMember("session-b", "Ben");
+        broadcaster.publish(room);
+        broadcaster.publish(room); // nothing changed, nothing sent
+
+        verify(broker, times(1)).send(eq("/topic/room/TEST/state"), any(Message.class));
+        ArgumentCaptor<StateDelta> delta = ArgumentCaptor.forClass(StateDelta.class);
+        verify(broker, times(1)).convertAndSend(eq("/topic/room/TEST/delta"), delta.capture());
+        assertEquals(room.getVersion(), delta.getValue().version());
+        assertEquals("Ben", delta.getValue().memberOps().get(0).value().name());
+    }
+
+    @Test
+    void channelUpdatesCoverOnlyTheChangedParts() {
+        Room room = new Room("TEST");
+        room.assumeChairRole("chair");
+        State base = room.snapshot();
+
+        room.addParticipantToQueue(new Participant("session-a", "Ada", 1L));
+        List<ChannelUpdate> updates = ChannelUpdate.between(base, room.snapshot());
+
+        assertEquals(List.of("queue"), updates.stream().map(ChannelUpdate::channel).toList());
+        assertEquals(room.getVersion(), updates.get(0).version());
+        assertEquals(StateChannel.values().length, ChannelUpdate.between(null, room.snapshot()).size());
+    }
+
+    @Test
+    void channelModePublishesEachChangedChannelOnItsOwnTopic() throws Exception {
+        SimpMessagingTemplate broker = mock(SimpMessagingTemplate.class);
+        RoomRepository repository = new RoomRepository();
+        RoomBroadcaster broadcaster = new RoomBroadcaster(broker, repository, new ObjectMapper());
+        Field modeField = RoomBroadcaster.class.getDeclaredField("mode");
+        modeField.setAccessible(true);
+        modeField.set(broadcaster, "channels");
+        Room room = repository.createRoom("TEST");
+        room.assumeChairRole("chair");
+
+        broadcaster.publish(room);
+        clearInvocations(broker);
+        room.startPoll("chair", "Lunch?", "YES_NO", null, null);
+        broadcaster.publishNow(room);
+
+        ArgumentCaptor<ChannelUpdate> update = ArgumentCaptor.forClass(ChannelUpdate.class);
+        verify(broker, times(1)).convertAndSend(eq("/topic/room/TEST/poll"), update.capture());
+        assertEquals("Lunch?", ((PollState) update.getValue().fields().get("pollState")).question());
+        verify(broker, never()).convertAndSend(eq("/topic/room/TEST/members"), any(Object.class));
+        verify(broker, never()).send(eq("/topic/room/TEST/state"), any(Message.class));
+    }
+
+    private static <T> List<T> apply(List<T> list, List<ListOp<T>> ops) {
+        List<T> result = new ArrayList<>(list);
+        for (ListOp<T> op : ops) {
+            if ("remove".equals(op.op())) {
+                result.remove(op.index());
+            } else {
+                result.add(op.index(), op.value());
+            }
+        }
+        return result;
+    }
+}
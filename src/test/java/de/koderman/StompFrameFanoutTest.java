@@ -0,0 +1,146 @@
+package de.koderman;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.koderman.domain.Room;
+import de.koderman.domain.RoomRepository;
+import de.koderman.infrastructure.RoomBroadcaster;
+import de.koderman.infrastructure.StompFrameFanout;
+import de.koderman.infrastructure.WebSocketSessionRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class StompFrameFanoutTest {
+
+    private WebSocketSessionRegistry sessions;
+    private StompFrameFanout fanout;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        sessions = new WebSocketSessionRegistry();
+        fanout = new StompFrameFanout(sessions);
+        Field fanoutField = StompFrameFanout.class.getDeclaredField("fanout");
+        fanoutField.setAccessible(true);
+        fanoutField.set(fanout, "frames");
+    }
+
+    @Test
+    void oneFrameIsWrittenToEverySubscriberUnderItsOwnSubscriptionId() throws Exception {
+        WebSocketSession ada = session("session-a");
+        WebSocketSession ben = session("session-b");
+        subscribe("session-a", "sub-0", "/topic/room/TEST/state");
+        subscribe("session-b", "sub-3", "/topic/room/TEST/state");
+        subscribe("session-b", "sub-4", "/topic/room/OTHER/state");
+
+        int sent = fanout.send("/topic/room/TEST/state", "{\"roomCode\":\"TEST\"}".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(2, sent);
+        String toAda = written(ada);
+        String toBen = written(ben);
+        assertTrue(toAda.startsWith("MESSAGE\nsubscription:sub-0\n"));
+        assertTrue(toBen.startsWith("MESSAGE\nsubscription:sub-3\n"));
+        String shared = toAda.substring("MESSAGE\nsubscription:sub-0\n".length());
+        assertEquals(shared, toBen.substring("MESSAGE\nsubscription:sub-3\n".length()));
+        assertTrue(shared.startsWith("destination:/topic/room/TEST/state\n"));
+        assertTrue(shared.endsWith("\n\n{\"roomCode\":\"TEST\"}\0"));
+    }
+
+    @Test
+    void aStuckSubscriberHoldsUpNeitherTheSenderNorTheOthers() throws Exception {
+        WebSocketSession stuck = session("session-a");
+        WebSocketSession ben = session("session-b");
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS)).when(stuck).sendMessage(any());
+        subscribe("session-a", "sub-0", "/topic/room/TEST/state");
+        subscribe("session-b", "sub-0", "/topic/room/TEST/state");
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(2, fanout.send("/topic/room/TEST/state", "{}".getBytes(StandardCharsets.UTF_8)));
+            }
+            verify(ben, timeout(2000).atLeastOnce()).sendMessage(any());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void unsubscribedAndDisconnectedSessionsGetNothing() throws Exception {
+        WebSocketSession ada = session("session-a");
+        WebSocketSession ben = session("session-b");
+        subscribe("session-a", "sub-0", "/topic/room/TEST/state");
+        subscribe("session-b", "sub-0", "/topic/room/TEST/state");
+
+        inbound(StompCommand.UNSUBSCRIBE, "session-a", "sub-0", null);
+        inbound(StompCommand.DISCONNECT, "session-b", null, null);
+
+        assertEquals(0, fanout.send("/topic/room/TEST/state", "{}".getBytes(StandardCharsets.UTF_8)));
+        verify(ada, never()).sendMessage(any());
+        verify(ben, never()).sendMessage(any());
+    }
+
+    @Test
+    void broadcasterBypassesTheBrokerForRoomTopics() throws Exception {
+        SimpMessagingTemplate broker = mock(SimpMessagingTemplate.class);
+        RoomRepository repository = new RoomRepository();
+        RoomBroadcaster broadcaster = new RoomBroadcaster(broker, repository, new ObjectMapper(), fanout);
+        WebSocketSession ada = session("session-a");
+        subscribe("session-a", "sub-0", "/topic/room/TEST/state");
+        Room room = repository.createRoom("TEST");
+
+        room.upsertMember("session-a", "Ada");
+        broadcaster.publishNow(room);
+
+        assertTrue(written(ada).contains("\"name\":\"Ada\""));
+        verify(broker, never()).send(anyString(), any(Message.class));
+    }
+
+    private WebSocketSession session(String sessionId) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(sessionId);
+        when(session.isOpen()).thenReturn(true);
+        sessions.register(session);
+        return session;
+    }
+
+    private void subscribe(String sessionId, String subscriptionId, String destination) {
+        inbound(StompCommand.SUBSCRIBE, sessionId, subscriptionId, destination);
+    }
+
+    private void inbound(StompCommand command, String sessionId, String subscriptionId, String destination) {
+        StompHeaderAccessor headers = StompHeaderAccessor.create(command);
+        headers.setSessionId(sessionId);
+        if (subscriptionId != null) {
+            headers.setSubscriptionId(subscriptionId);
+        }
+        if (destination != null) {
+            headers.setDestination(destination);
+        }
+        fanout.preSend(MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders()), null);
+    }
+
+    // The session's outbox writes on its own thread
+    private static String written(WebSocketSession session) throws Exception {
+        ArgumentCaptor<TextMessage> message = ArgumentCaptor.forClass(TextMessage.class);
+        verify(session, timeout(2000)).sendMessage(message.capture());
+        return message.getValue().getPayload();
+    }
+}
@@ -6,6 +6,7 @@ import de.koderman.infrastructure.*;
 
 import static org.mockito.Mockito.*;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
@@ -16,7 +17,7 @@ public class WebSocketErrorHandlingTest {
     void testJoinMethodThrowsExceptionForNonExistentRoom() {
         SimpMessagingTemplate mockTemplate = mock(SimpMessagingTemplate.class);
         RoomRepository repository = new RoomRepository();
-        MeetingController controller = new MeetingController(mockTemplate, repository);
+        MeetingController controller = new MeetingController(mockTemplate, repository, new RoomBroadcaster(mockTemplate, repository, new ObjectMapper()));
         Join joinMessage = new Join("TestUser");
         
         // Mock StompHeaderAccessor
@@ -37,7 +38,7 @@ public class WebSocketErrorHandlingTest {
     void testRequestMethodThrowsExceptionForNonExistentRoom() {
         SimpMessagingTemplate mockTemplate = mock(SimpMessagingTemplate.class);
         RoomRepository repository = new RoomRepository();
-        MeetingController controller = new MeetingController(mockTemplate, repository);
+        MeetingController controller = new MeetingController(mockTemplate, repository, new RoomBroadcaster(mockTemplate, repository, new ObjectMapper()));
         RequestSpeak requestMessage = new RequestSpeak("TestSpeaker");
         StompHeaderAccessor headerAccessor = mock(StompHeaderAccessor.class);
         when(headerAccessor.getSessionId()).thenReturn("test-session");
@@ -56,13 +57,15 @@ public class WebSocketErrorHandlingTest {
     void testWithdrawMethodThrowsExceptionForNonExistentRoom() {
         SimpMessagingTemplate mockTemplate = mock(SimpMessagingTemplate.class);
         RoomRepository repository = new RoomRepository();
-        MeetingController controller = new MeetingController(mockTemplate, repository);
+        MeetingController controller = new MeetingController(mockTemplate, repository, new RoomBroadcaster(mockTemplate, repository, new ObjectMapper()));
         Withdraw withdrawMessage = new Withdraw("TestUser");
+        StompHeaderAccessor headerAccessor = mock(StompHeaderAccessor.class);
+        when(headerAccessor.getSessionId()).thenReturn("test-session");
         
         // Should throw RoomNotFoundException for non-existent room
         RoomNotFoundException exception = assertThrows(
             RoomNotFoundException.class,
-            () -> controller.withdraw("NONEXIST", withdrawMessage)
+            () -> controller.withdraw("NONEXIST", withdrawMessage, headerAccessor)
         );
         
         assertEquals("Room not found: NONEXIST", exception.getMessage());